@@ -1,5 +1,8 @@
 package com.brsanthu.googleanalytics;
 
+import java.time.Duration;
+
+import com.brsanthu.googleanalytics.request.DefaultRequest;
 import com.brsanthu.googleanalytics.request.EventHit;
 import com.brsanthu.googleanalytics.request.ExceptionHit;
 import com.brsanthu.googleanalytics.request.ItemHit;
@@ -48,4 +51,53 @@ public interface GoogleAnalytics extends AutoCloseable {
     }
 
     void flush();
+
+    /**
+     * Returns the view of this instance which sends the hits to given tracking id, unless the hit sets one itself. View
+     * shares all the resources (threads, http connections and batches) of this instance.
+     * <p>
+     * Default implementation calls {@link #tenant(DefaultRequest)}, so it throws {@link UnsupportedOperationException}
+     * unless that is implemented too.
+     */
+    default GoogleAnalytics tenant(String trackingId) {
+        // Client id of this instance's default request still applies
+        return tenant(new DefaultRequest().clientId(null).trackingId(trackingId));
+    }
+
+    /**
+     * Returns the view of this instance which fills the parameters not set by the hits from given default request,
+     * before the defaults of this instance are applied. View shares all the resources (threads, http connections and
+     * batches) of this instance, so many tracking ids can be served by one instance.
+     * <p>
+     * Note that {@link DefaultRequest} comes with a random client id, which needs to be cleared with
+     * <code>clientId(null)</code> if the client id of this instance's default request should be used.
+     * <p>
+     * Stats, config and {@link #flush()} of the view are those of this instance, covering all tenants, and
+     * {@link #resetStats()} on the view does nothing.
+     * <p>
+     * Default implementation throws {@link UnsupportedOperationException}, so implementations other than the one built
+     * by {@link GoogleAnalyticsBuilder} don't support tenant views unless they override this.
+     */
+    default GoogleAnalytics tenant(DefaultRequest tenantRequest) {
+        throw new UnsupportedOperationException("Tenant views are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Stops accepting hits and sends the pending ones until the given timeout elapses. Hits which are not sent by then
+     * are dropped.
+     *
+     * <p>
+     * Default implementation just calls {@link #close()}, without a timeout, and reports no pending hits as it can't
+     * count them.
+     *
+     * @return how many of the pending hits were sent and dropped.
+     */
+    default ShutdownReport close(Duration timeout) {
+        try {
+            close();
+        } catch (Exception e) {
+            throw new RuntimeException("Exception while closing Google Analytics", e);
+        }
+        return new ShutdownReport(0, 0, 0, 0);
+    }
 }
\ No newline at end of file
@@ -6,16 +6,24 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.brsanthu.googleanalytics.discovery.DefaultRequestParameterDiscoverer;
 import com.brsanthu.googleanalytics.discovery.RequestParameterDiscoverer;
+import com.brsanthu.googleanalytics.httpclient.ApacheHttpAsyncClientImpl;
 import com.brsanthu.googleanalytics.httpclient.ApacheHttpClientImpl;
 import com.brsanthu.googleanalytics.httpclient.HttpClient;
+import com.brsanthu.googleanalytics.internal.BoundedExecutorService;
 import com.brsanthu.googleanalytics.internal.GaUtils;
 import com.brsanthu.googleanalytics.internal.GoogleAnalyticsImpl;
 import com.brsanthu.googleanalytics.internal.GoogleAnalyticsThreadFactory;
+import com.brsanthu.googleanalytics.internal.VirtualThreads;
 import com.brsanthu.googleanalytics.request.DefaultRequest;
 
 public class GoogleAnalyticsBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(GoogleAnalyticsBuilder.class);
+
     private GoogleAnalyticsConfig config = new GoogleAnalyticsConfig();
     private DefaultRequest defaultRequest = new DefaultRequest();
     private HttpClient httpClient;
@@ -72,16 +80,47 @@ public class GoogleAnalyticsBuilder {
             return httpClient;
         }
 
+        if (config.isAsyncHttpClientEnabled()) {
+            if (isAsyncHttpClientSupported()) {
+                return new ApacheHttpAsyncClientImpl(config);
+            }
+
+            logger.warn("Async http client needs org.apache.httpcomponents:httpasyncclient on the classpath, so the blocking client is used");
+        }
+
         return new ApacheHttpClientImpl(config);
     }
 
+    /**
+     * Checks for the optional async client library without loading {@link ApacheHttpAsyncClientImpl}, which fails to
+     * load without it.
+     */
+    private static boolean isAsyncHttpClientSupported() {
+        try {
+            Class.forName("org.apache.http.impl.nio.client.HttpAsyncClients", false, GoogleAnalyticsBuilder.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
     protected ExecutorService createExecutor() {
         if (executor != null) {
             return executor;
         }
 
+        if (config.isVirtualThreadsEnabled()) {
+            ExecutorService virtualExecutor = VirtualThreads.newExecutor(config.getThreadNameFormat().replace("{0}", ""));
+            if (virtualExecutor != null) {
+                return new BoundedExecutorService(virtualExecutor, config.getMaxVirtualThreads(), config.getThreadQueueSize());
+            }
+
+            logger.warn("Virtual threads need Java 21 or later, so async requests will use the thread pool");
+        }
+
+        // Rejections are handled by GoogleAnalytics as per the configured OverloadPolicy
         return new ThreadPoolExecutor(config.getMinThreads(), config.getMaxThreads(), config.getThreadTimeoutSecs(), TimeUnit.SECONDS,
-                new LinkedBlockingDeque<Runnable>(config.getThreadQueueSize()), createThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+                new LinkedBlockingDeque<Runnable>(config.getThreadQueueSize()), createThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
     }
 
     protected ThreadFactory createThreadFactory() {
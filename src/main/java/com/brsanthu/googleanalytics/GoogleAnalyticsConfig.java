@@ -10,9 +10,15 @@
  */
 package com.brsanthu.googleanalytics;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.brsanthu.googleanalytics.discovery.AwtRequestParameterDiscoverer;
 import com.brsanthu.googleanalytics.discovery.DefaultRequestParameterDiscoverer;
 import com.brsanthu.googleanalytics.discovery.RequestParameterDiscoverer;
+import com.brsanthu.googleanalytics.httpclient.HttpClient;
+import com.brsanthu.googleanalytics.internal.Constants;
 import com.brsanthu.googleanalytics.internal.GoogleAnalyticsImpl;
 import com.brsanthu.googleanalytics.internal.GoogleAnalyticsStatsImpl;
 
@@ -41,6 +47,51 @@ public class GoogleAnalyticsConfig {
     private boolean validate = true;
     private boolean batchingEnabled = false;
     private int batchSize = 20;
+    private long maxBatchDelayMillis = 0;
+    private int batchQueueSize = 1000;
+    private boolean adaptiveBatchingEnabled = false;
+    private Map<String, HitPriority> hitPriorities = defaultHitPriorities();
+    private Map<HitPriority, Integer> laneQueueSizes = new EnumMap<>(HitPriority.class);
+    private Map<HitPriority, Integer> laneWeights = defaultLaneWeights();
+    private double samplingRate = 1;
+    private Map<String, Double> hitSamplingRates = new ConcurrentHashMap<>();
+    private int samplingWeightMetricIndex = 0;
+    private double propertyHitsPerSecond = 0;
+    private int propertyHitBurst = 500;
+    private double clientHitsPerSecond = 0;
+    private int clientHitBurst = 500;
+    private int quotaBuckets = 4096;
+    private int maxInFlightBatches = 1;
+    private int batchQueueStripes = 1;
+    private int offHeapLaneBytes = 0;
+    private boolean asyncPipelineEnabled = false;
+    private int asyncPipelineSize = 1024;
+    private OverloadPolicy overloadPolicy = OverloadPolicy.CALLER_RUNS;
+    private long overloadBlockTimeoutMillis = 100;
+    private double overloadShedThreshold = 0.75;
+    private long maxBufferedBytes = 0;
+    private double memoryPressureThreshold = 0;
+    private double memoryPressureBufferRatio = 0.25;
+    private boolean virtualThreadsEnabled = false;
+    private int maxVirtualThreads = 1000;
+    private long shutdownTimeoutMillis = 10000;
+    private boolean shutdownHookEnabled = false;
+    private boolean queueTimeEnabled = false;
+    private int maxRetries = 0;
+    private long retryInitialBackoffMillis = 100;
+    private long retryMaxBackoffMillis = 10000;
+    private double retryBudgetRatio = 0.1;
+    private int retryBudgetMax = 10;
+    private boolean circuitBreakerEnabled = false;
+    private int circuitBreakerFailureThreshold = 5;
+    private long circuitBreakerOpenMillis = 30000;
+    private int httpConnectTimeoutMillis = 5000;
+    private int httpSocketTimeoutMillis = 10000;
+    private boolean asyncHttpClientEnabled = false;
+    private int httpIoThreads = 2;
+    private String spoolDirectory = null;
+    private int spoolSegmentBytes = 4 * 1024 * 1024;
+    private long spoolMaxBytes = 256 * 1024 * 1024;
     private String httpUrl = "http://www.google-analytics.com/collect";
     private String httpsUrl = "https://www.google-analytics.com/collect";
     private String batchUrl = "https://www.google-analytics.com/batch";
@@ -347,12 +398,32 @@ public class GoogleAnalyticsConfig {
 
     @Override
     public String toString() {
-        return "GoogleAnalyticsConfig [threadNameFormat=" + threadNameFormat + ", enabled=" + enabled + ", minThreads=" + minThreads + ", maxThreads="
-                + maxThreads + ", threadTimeoutSecs=" + threadTimeoutSecs + ", threadQueueSize=" + threadQueueSize + ", maxHttpConnectionsPerRoute="
-                + maxHttpConnectionsPerRoute + ", useHttps=" + useHttps + ", validate=" + validate + ", httpUrl=" + httpUrl + ", httpsUrl=" + httpsUrl
-                + ", userAgent=" + userAgent + ", proxyHost=" + proxyHost + ", proxyPort=" + proxyPort + ", proxyUserName=" + proxyUserName
-                + ", proxyPassword=" + mask(proxyPassword) + ", discoverRequestParameters=" + discoverRequestParameters + ", gatherStats="
-                + gatherStats + ", requestParameterDiscoverer=" + requestParameterDiscoverer + "]";
+        return "GoogleAnalyticsConfig [threadNameFormat=" + threadNameFormat + ", enabled=" + enabled + ", minThreads=" + minThreads
+                + ", maxThreads=" + maxThreads + ", threadTimeoutSecs=" + threadTimeoutSecs + ", threadQueueSize=" + threadQueueSize
+                + ", maxHttpConnectionsPerRoute=" + maxHttpConnectionsPerRoute + ", useHttps=" + useHttps + ", validate=" + validate
+                + ", batchingEnabled=" + batchingEnabled + ", batchSize=" + batchSize + ", maxBatchDelayMillis=" + maxBatchDelayMillis
+                + ", batchQueueSize=" + batchQueueSize + ", adaptiveBatchingEnabled=" + adaptiveBatchingEnabled + ", hitPriorities=" + hitPriorities
+                + ", laneQueueSizes=" + laneQueueSizes + ", laneWeights=" + laneWeights + ", samplingRate=" + samplingRate
+                + ", hitSamplingRates=" + hitSamplingRates + ", samplingWeightMetricIndex=" + samplingWeightMetricIndex
+                + ", propertyHitsPerSecond=" + propertyHitsPerSecond + ", propertyHitBurst=" + propertyHitBurst
+                + ", clientHitsPerSecond=" + clientHitsPerSecond + ", clientHitBurst=" + clientHitBurst + ", quotaBuckets=" + quotaBuckets
+                + ", maxInFlightBatches=" + maxInFlightBatches + ", batchQueueStripes=" + batchQueueStripes + ", offHeapLaneBytes=" + offHeapLaneBytes
+                + ", asyncPipelineEnabled=" + asyncPipelineEnabled + ", asyncPipelineSize=" + asyncPipelineSize + ", overloadPolicy=" + overloadPolicy
+                + ", overloadBlockTimeoutMillis=" + overloadBlockTimeoutMillis + ", overloadShedThreshold=" + overloadShedThreshold
+                + ", maxBufferedBytes=" + maxBufferedBytes + ", memoryPressureThreshold=" + memoryPressureThreshold
+                + ", memoryPressureBufferRatio=" + memoryPressureBufferRatio + ", virtualThreadsEnabled=" + virtualThreadsEnabled
+                + ", maxVirtualThreads=" + maxVirtualThreads + ", shutdownTimeoutMillis=" + shutdownTimeoutMillis
+                + ", shutdownHookEnabled=" + shutdownHookEnabled + ", queueTimeEnabled=" + queueTimeEnabled + ", maxRetries=" + maxRetries
+                + ", retryInitialBackoffMillis=" + retryInitialBackoffMillis + ", retryMaxBackoffMillis=" + retryMaxBackoffMillis
+                + ", retryBudgetRatio=" + retryBudgetRatio + ", retryBudgetMax=" + retryBudgetMax + ", circuitBreakerEnabled=" + circuitBreakerEnabled
+                + ", circuitBreakerFailureThreshold=" + circuitBreakerFailureThreshold + ", circuitBreakerOpenMillis=" + circuitBreakerOpenMillis
+                + ", httpConnectTimeoutMillis=" + httpConnectTimeoutMillis + ", httpSocketTimeoutMillis=" + httpSocketTimeoutMillis
+                + ", asyncHttpClientEnabled=" + asyncHttpClientEnabled + ", httpIoThreads=" + httpIoThreads + ", spoolDirectory=" + spoolDirectory
+                + ", spoolSegmentBytes=" + spoolSegmentBytes + ", spoolMaxBytes=" + spoolMaxBytes + ", httpUrl=" + httpUrl + ", httpsUrl=" + httpsUrl
+                + ", batchUrl=" + batchUrl + ", userAgent=" + userAgent + ", proxyHost=" + proxyHost + ", proxyPort=" + proxyPort
+                + ", proxyUserName=" + proxyUserName + ", proxyPassword=" + mask(proxyPassword)
+                + ", discoverRequestParameters=" + discoverRequestParameters + ", gatherStats=" + gatherStats
+                + ", requestParameterDiscoverer=" + requestParameterDiscoverer + "]";
     }
 
     public static String mask(String value) {
@@ -377,6 +448,230 @@ public class GoogleAnalyticsConfig {
         return this;
     }
 
+    public boolean isAsyncPipelineEnabled() {
+        return asyncPipelineEnabled;
+    }
+
+    /**
+     * If set, asynchronous hits are posted through a ring of pre-allocated slots instead of the executor. Posting
+     * thread just stores the hit in a free slot, a dedicated thread encodes the hits and queues them for batching, and
+     * the batch sender threads send them. This avoids the per hit allocations and locks of the executor queue (except for
+     * the future of {@link GoogleAnalyticsExecutor#postAsync(com.brsanthu.googleanalytics.request.GoogleAnalyticsRequest)},
+     * which completes once the hit is queued). Encoder thread never waits, so when the buffered bytes budget is used up
+     * it drops the oldest hits even if the {@link #setOverloadPolicy(OverloadPolicy)} would wait or post in the calling
+     * thread. Applies only when batching is enabled. Default is <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setAsyncPipelineEnabled(boolean asyncPipelineEnabled) {
+        this.asyncPipelineEnabled = asyncPipelineEnabled;
+        return this;
+    }
+
+    public int getAsyncPipelineSize() {
+        return asyncPipelineSize;
+    }
+
+    /**
+     * Number of slots in the async pipeline, rounded up to the power of two. When all slots are in use, the configured
+     * {@link #setOverloadPolicy(OverloadPolicy)} is applied. Default is <code>1024</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setAsyncPipelineSize(int asyncPipelineSize) {
+        this.asyncPipelineSize = asyncPipelineSize;
+        return this;
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    /**
+     * What to do with the asynchronous hits when executor queue (of {@link #setThreadQueueSize(int)}) is full. Default
+     * is {@link OverloadPolicy#CALLER_RUNS}. Policies other than caller runs and drop newest need the executor to be a
+     * {@link java.util.concurrent.ThreadPoolExecutor} (which is what is created by default), otherwise they fall back
+     * to drop newest.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        this.overloadPolicy = overloadPolicy;
+        return this;
+    }
+
+    public long getOverloadBlockTimeoutMillis() {
+        return overloadBlockTimeoutMillis;
+    }
+
+    /**
+     * Maximum time to wait for room in the executor queue with {@link OverloadPolicy#BLOCK}. Default is
+     * <code>100</code> milliseconds.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setOverloadBlockTimeoutMillis(long overloadBlockTimeoutMillis) {
+        this.overloadBlockTimeoutMillis = overloadBlockTimeoutMillis;
+        return this;
+    }
+
+    public double getOverloadShedThreshold() {
+        return overloadShedThreshold;
+    }
+
+    /**
+     * Fraction of executor queue capacity (between 0 and 1) beyond which {@link OverloadPolicy#PROBABILISTIC} starts
+     * dropping the hits. Default is <code>0.75</code>.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setOverloadShedThreshold(double overloadShedThreshold) {
+        this.overloadShedThreshold = overloadShedThreshold;
+        return this;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    /**
+     * Max bytes of hits which can be buffered at a time, across the executor queue, the batch queue, the batches
+     * waiting for the sender and the hits being sent or retried. Batched hits are counted by their encoded size, and
+     * hits waiting for the executor by the size of their params (and those of the default request), as they are not
+     * yet encoded. Once the budget is used up, new hits are handled as per the {@link OverloadPolicy}, as if the queue
+     * was full. With {@link OverloadPolicy#PROBABILISTIC}, batched hits are shed as per the fraction of the budget in
+     * use rather than the executor queue. Default is <code>0</code>, which doesn't limit the bytes.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        return this;
+    }
+
+    public double getMemoryPressureThreshold() {
+        return memoryPressureThreshold;
+    }
+
+    /**
+     * Fraction of the max heap size (between 0 and 1), as per the usage of the heap pools after their last collection,
+     * beyond which the heap is considered under pressure. While it is, {@link HitPriority#LOW} hits are dropped
+     * (including the ones already queued), or {@link HitPriority#NORMAL} ones too if no hit type is in the low lane,
+     * batches are handed off without waiting for them to fill up and the buffered bytes are limited as per
+     * {@link #setMemoryPressureBufferRatio(double)}. All goes back to normal once heap usage after a collection is back
+     * under this. Heap usage is polled every 100ms at most, by the threads posting the hits. Default is <code>0</code>,
+     * which doesn't watch the heap.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMemoryPressureThreshold(double memoryPressureThreshold) {
+        this.memoryPressureThreshold = memoryPressureThreshold;
+        return this;
+    }
+
+    public double getMemoryPressureBufferRatio() {
+        return memoryPressureBufferRatio;
+    }
+
+    /**
+     * Fraction of {@link #setMaxBufferedBytes(long)} which can be buffered while the heap is under pressure. If that is
+     * not set, fraction of the bytes buffered when the pressure started (but at least one batch). Default is
+     * <code>0.25</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMemoryPressureBufferRatio(double memoryPressureBufferRatio) {
+        this.memoryPressureBufferRatio = memoryPressureBufferRatio;
+        return this;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Processes the async requests in virtual threads (one per request) instead of the thread pool configured by
+     * <code>minThreads</code>/<code>maxThreads</code>, so blocking http calls don't cap the number of concurrent
+     * sends. Needs Java 21 or later, on older versions the thread pool is used anyway. Default is <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        return this;
+    }
+
+    public int getMaxVirtualThreads() {
+        return maxVirtualThreads;
+    }
+
+    /**
+     * Maximum number of requests processed at the same time by virtual threads. Requests beyond that wait in a queue of
+     * {@link #setThreadQueueSize(int)}, and are handled as per the {@link OverloadPolicy} once it is full. Default is
+     * <code>1000</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMaxVirtualThreads(int maxVirtualThreads) {
+        this.maxVirtualThreads = maxVirtualThreads;
+        return this;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    /**
+     * Maximum time {@link GoogleAnalytics#close()} (and the shutdown hook) waits for the queued hits to be sent. Hits
+     * which are not sent by then are dropped. Default is <code>10000</code> milliseconds.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        return this;
+    }
+
+    public boolean isShutdownHookEnabled() {
+        return shutdownHookEnabled;
+    }
+
+    /**
+     * Registers a JVM shutdown hook which closes the GoogleAnalytics instance, so the queued hits are sent (within
+     * <code>shutdownTimeoutMillis</code>) when the application exits without closing it. Default is
+     * <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setShutdownHookEnabled(boolean shutdownHookEnabled) {
+        this.shutdownHookEnabled = shutdownHookEnabled;
+        return this;
+    }
+
     public String getBatchUrl() {
         return batchUrl;
     }
@@ -399,9 +694,629 @@ public class GoogleAnalyticsConfig {
         return batchSize;
     }
 
+    /**
+     * Maximum number of hits to send in one batch. Default is <code>20</code>, which is also the maximum allowed by
+     * Measurement Protocol. Batches are also cut earlier if their payload would go beyond the 16 KB limit.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
     public GoogleAnalyticsConfig setBatchSize(int batchSize) {
         this.batchSize = batchSize;
         return this;
     }
 
+    public boolean isAdaptiveBatchingEnabled() {
+        return adaptiveBatchingEnabled;
+    }
+
+    /**
+     * Adjusts the batch size and the linger delay at runtime based on the queue depth, send latency and error rate.
+     * <code>batchSize</code> and <code>maxBatchDelayMillis</code> become the upper limits, and linger delay varies
+     * between a quarter of <code>maxBatchDelayMillis</code> and the full value. Batch size shrinks on low traffic only if
+     * <code>maxBatchDelayMillis</code> is set. Default is <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setAdaptiveBatchingEnabled(boolean adaptiveBatchingEnabled) {
+        this.adaptiveBatchingEnabled = adaptiveBatchingEnabled;
+        return this;
+    }
+
+    private static Map<String, HitPriority> defaultHitPriorities() {
+        Map<String, HitPriority> priorities = new ConcurrentHashMap<>();
+        priorities.put(Constants.HIT_TXN, HitPriority.HIGH);
+        priorities.put(Constants.HIT_ITEM, HitPriority.HIGH);
+        return priorities;
+    }
+
+    private static Map<HitPriority, Integer> defaultLaneWeights() {
+        Map<HitPriority, Integer> weights = new EnumMap<>(HitPriority.class);
+        weights.put(HitPriority.HIGH, 4);
+        weights.put(HitPriority.NORMAL, 2);
+        weights.put(HitPriority.LOW, 1);
+        return weights;
+    }
+
+    public HitPriority getHitPriority(String hitType) {
+        return hitType == null ? HitPriority.NORMAL : hitPriorities.getOrDefault(hitType, HitPriority.NORMAL);
+    }
+
+    /**
+     * Sets the priority lane of the hits of given type (value of <code>t</code> parameter, like <code>event</code>).
+     * Hit types not set are in {@link HitPriority#NORMAL} lane, except <code>transaction</code> and <code>item</code>
+     * which are in {@link HitPriority#HIGH} lane by default.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setHitPriority(String hitType, HitPriority priority) {
+        hitPriorities.put(hitType, priority);
+        return this;
+    }
+
+    /**
+     * Tells whether any hit type is set to given priority lane.
+     */
+    public boolean isHitPriorityAssigned(HitPriority priority) {
+        return hitPriorities.containsValue(priority);
+    }
+
+    public int getLaneQueueSize(HitPriority priority) {
+        return laneQueueSizes.getOrDefault(priority, batchQueueSize);
+    }
+
+    /**
+     * Maximum number of hits which can be waiting in the batch queue of given priority lane. Default is
+     * <code>batchQueueSize</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setLaneQueueSize(HitPriority priority, int queueSize) {
+        laneQueueSizes.put(priority, queueSize);
+        return this;
+    }
+
+    public int getLaneWeight(HitPriority priority) {
+        return laneWeights.getOrDefault(priority, 1);
+    }
+
+    /**
+     * Share of each batch given to the hits of given priority lane, relative to the other lanes which have hits
+     * waiting. Default weights are <code>4</code> for {@link HitPriority#HIGH}, <code>2</code> for
+     * {@link HitPriority#NORMAL} and <code>1</code> for {@link HitPriority#LOW}.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setLaneWeight(HitPriority priority, int weight) {
+        laneWeights.put(priority, weight);
+        return this;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * Share of the clients (between 0 and 1) whose hits are sent. Clients are picked by the hash of their client id,
+     * so all hits of a client are either sent or dropped, the same way on every node. Dropped hits are counted in stats
+     * as sampled out hits. Default is <code>1</code>, which sends all hits.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSamplingRate(double samplingRate) {
+        this.samplingRate = samplingRate;
+        return this;
+    }
+
+    public double getSamplingRate(String hitType) {
+        Double rate = hitType == null ? null : hitSamplingRates.get(hitType);
+        return rate == null ? samplingRate : rate;
+    }
+
+    /**
+     * Sampling rate for the hits of given type (value of <code>t</code> parameter), overriding the one set with
+     * {@link #setSamplingRate(double)}. As the same client id hash is used for all hit types, clients sampled in at a
+     * lower rate are sampled in at all higher rates too.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSamplingRate(String hitType, double samplingRate) {
+        hitSamplingRates.put(hitType, samplingRate);
+        return this;
+    }
+
+    public int getSamplingWeightMetricIndex() {
+        return samplingWeightMetricIndex;
+    }
+
+    /**
+     * Index of the custom metric which carries the sampling weight (<code>1 / rate</code>, rounded) of the sampled
+     * hits, so the reports can be scaled back up. Default is <code>0</code>, which doesn't add the metric.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSamplingWeightMetricIndex(int samplingWeightMetricIndex) {
+        this.samplingWeightMetricIndex = samplingWeightMetricIndex;
+        return this;
+    }
+
+    public double getPropertyHitsPerSecond() {
+        return propertyHitsPerSecond;
+    }
+
+    /**
+     * Rate at which the hits of each tracking id are allowed to be sent, to stay within the Measurement Protocol quota
+     * of the property. Hits over the quota are dropped locally instead of being sent only to be discarded by Google
+     * Analytics. Default is <code>0</code>, which doesn't limit the hits.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setPropertyHitsPerSecond(double propertyHitsPerSecond) {
+        this.propertyHitsPerSecond = propertyHitsPerSecond;
+        return this;
+    }
+
+    public int getPropertyHitBurst() {
+        return propertyHitBurst;
+    }
+
+    /**
+     * Number of hits of a tracking id which can be sent at once above the {@link #setPropertyHitsPerSecond(double)}
+     * rate, after a quiet period. Default is <code>500</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setPropertyHitBurst(int propertyHitBurst) {
+        this.propertyHitBurst = propertyHitBurst;
+        return this;
+    }
+
+    public double getClientHitsPerSecond() {
+        return clientHitsPerSecond;
+    }
+
+    /**
+     * Rate at which the hits of each client id (of a tracking id) are allowed to be sent, like
+     * {@link #setPropertyHitsPerSecond(double)} but per client. Default is <code>0</code>, which doesn't limit the
+     * hits.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setClientHitsPerSecond(double clientHitsPerSecond) {
+        this.clientHitsPerSecond = clientHitsPerSecond;
+        return this;
+    }
+
+    public int getClientHitBurst() {
+        return clientHitBurst;
+    }
+
+    /**
+     * Number of hits of a client id which can be sent at once above the {@link #setClientHitsPerSecond(double)} rate.
+     * Default is <code>500</code>, which is the Measurement Protocol limit of hits per session.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setClientHitBurst(int clientHitBurst) {
+        this.clientHitBurst = clientHitBurst;
+        return this;
+    }
+
+    public int getQuotaBuckets() {
+        return quotaBuckets;
+    }
+
+    /**
+     * Number of token buckets used to track the quotas, which keeps their memory fixed however many tracking and client
+     * ids are seen. Ids which hash to the same bucket share their quota. Default is <code>4096</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setQuotaBuckets(int quotaBuckets) {
+        this.quotaBuckets = quotaBuckets;
+        return this;
+    }
+
+    public boolean isQueueTimeEnabled() {
+        return queueTimeEnabled;
+    }
+
+    /**
+     * If set to true, hits carry the queue time (<code>qt</code>) of how long they were buffered between the time they
+     * were posted and the time they are sent, added to the queue time set on the hit, if any. Hits queued for longer
+     * than 4 hours are dropped, as Google Analytics doesn't process them anyway. Default is <code>false</code>, which
+     * sends the hits as they are, so this must be turned on to have the buffered hits recorded at the time they
+     * happened. Hits replayed from the spool (see {@link #setSpoolDirectory(String)}) always carry their queue time.
+     *
+     * <p>
+     * This is <strong>request</strong> level configuration (can be changed any time).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setQueueTimeEnabled(boolean queueTimeEnabled) {
+        this.queueTimeEnabled = queueTimeEnabled;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Number of times a hit (or batch) is sent again if it failed for a reason which may go away, like a connection
+     * error, rate limiting (429) or server error (5xx). Retries wait with exponential backoff and jitter, in the thread
+     * which sends the hit. Default is <code>0</code>, which doesn't retry.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public long getRetryInitialBackoffMillis() {
+        return retryInitialBackoffMillis;
+    }
+
+    /**
+     * Upper bound of the wait before the first retry, which doubles for each of the next retries. Actual wait is a
+     * random value below the bound, so clients which failed at the same time don't retry at the same time. Default is
+     * <code>100</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setRetryInitialBackoffMillis(long retryInitialBackoffMillis) {
+        this.retryInitialBackoffMillis = retryInitialBackoffMillis;
+        return this;
+    }
+
+    public long getRetryMaxBackoffMillis() {
+        return retryMaxBackoffMillis;
+    }
+
+    /**
+     * Max wait before any retry. Default is <code>10000</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+        this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+        return this;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * Retries allowed per request sent, across all requests of this instance. When Google Analytics is down, this keeps
+     * the retries to this fraction of the normal load instead of multiplying it. Default is <code>0.1</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+        return this;
+    }
+
+    public int getRetryBudgetMax() {
+        return retryBudgetMax;
+    }
+
+    /**
+     * Max number of retries the budget can save up while requests go through, which is also what it starts with.
+     * Default is <code>10</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setRetryBudgetMax(int retryBudgetMax) {
+        this.retryBudgetMax = retryBudgetMax;
+        return this;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    /**
+     * If set to true, hits are not sent for a while after {@link #setCircuitBreakerFailureThreshold(int)} requests in a
+     * row failed (after their retries), which keeps the threads, CPU and logs quiet while Google Analytics can't be
+     * reached. After {@link #setCircuitBreakerOpenMillis(long)}, one request is let through to probe and hits are sent
+     * again if it succeeds. Hits posted in the meantime are dropped. Default is <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        return this;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Number of failed requests in a row which stops the hits from being sent. Default is <code>5</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+        return this;
+    }
+
+    public long getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    /**
+     * Time for which hits are not sent once the failure threshold is reached, before a request probes whether Google
+     * Analytics is back. Default is <code>30000</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setCircuitBreakerOpenMillis(long circuitBreakerOpenMillis) {
+        this.circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+        return this;
+    }
+
+    public int getHttpConnectTimeoutMillis() {
+        return httpConnectTimeoutMillis;
+    }
+
+    /**
+     * Max time to wait for the connection to Google Analytics to be established. Default is <code>5000</code>.
+     * <code>0</code> waits forever.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setHttpConnectTimeoutMillis(int httpConnectTimeoutMillis) {
+        this.httpConnectTimeoutMillis = httpConnectTimeoutMillis;
+        return this;
+    }
+
+    public int getHttpSocketTimeoutMillis() {
+        return httpSocketTimeoutMillis;
+    }
+
+    /**
+     * Max time to wait for the response data from Google Analytics. Default is <code>10000</code>. <code>0</code> waits
+     * forever.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setHttpSocketTimeoutMillis(int httpSocketTimeoutMillis) {
+        this.httpSocketTimeoutMillis = httpSocketTimeoutMillis;
+        return this;
+    }
+
+    public boolean isAsyncHttpClientEnabled() {
+        return asyncHttpClientEnabled;
+    }
+
+    /**
+     * Sends the hits with the non-blocking Apache HttpAsyncClient, whose few I/O threads (see
+     * {@link #setHttpIoThreads(int)}) keep the requests in flight, instead of the blocking client. Number of requests in
+     * flight at the same time is bounded by {@link #setMaxHttpConnectionsPerRoute(int)}. Needs
+     * <code>org.apache.httpcomponents:httpasyncclient</code> on the classpath, without which the blocking client is
+     * used. Ignored if http client is set with {@link GoogleAnalyticsBuilder#withHttpClient(HttpClient)}. Default is
+     * <code>false</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setAsyncHttpClientEnabled(boolean asyncHttpClientEnabled) {
+        this.asyncHttpClientEnabled = asyncHttpClientEnabled;
+        return this;
+    }
+
+    public int getHttpIoThreads() {
+        return httpIoThreads;
+    }
+
+    /**
+     * Number of I/O threads of the non-blocking http client, see {@link #setAsyncHttpClientEnabled(boolean)}. Default
+     * is <code>2</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setHttpIoThreads(int httpIoThreads) {
+        this.httpIoThreads = httpIoThreads;
+        return this;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Directory in which batched hits are spooled until they are sent, so the hits which are queued or couldn't be
+     * sent when the process stops (or crashes) are sent by the next instance using the same directory. Directory must
+     * not be shared by running instances. Needs batching to be enabled. Default is <code>null</code>, which doesn't
+     * spool the hits.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+        return this;
+    }
+
+    public int getSpoolSegmentBytes() {
+        return spoolSegmentBytes;
+    }
+
+    /**
+     * Size of each spool file, which is memory mapped. Default is 4 MB.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSpoolSegmentBytes(int spoolSegmentBytes) {
+        this.spoolSegmentBytes = spoolSegmentBytes;
+        return this;
+    }
+
+    public long getSpoolMaxBytes() {
+        return spoolMaxBytes;
+    }
+
+    /**
+     * Max disk space used by the spool. Once reached, hits are only kept in memory (and a warning is logged) until the
+     * oldest spool file is fully sent. Default is 256 MB.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setSpoolMaxBytes(long spoolMaxBytes) {
+        this.spoolMaxBytes = spoolMaxBytes;
+        return this;
+    }
+
+    public int getBatchQueueSize() {
+        return batchQueueSize;
+    }
+
+    /**
+     * Maximum number of hits which can be waiting to be sent in batches. It is rounded up to the next power of two. If
+     * the queue is full even after sending what is already queued, the hit is dropped and counted in stats as dropped
+     * hit. Default is <code>1000</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setBatchQueueSize(int batchQueueSize) {
+        this.batchQueueSize = batchQueueSize;
+        return this;
+    }
+
+    public int getBatchQueueStripes() {
+        return batchQueueStripes;
+    }
+
+    /**
+     * Number of stripes to split the batch queue into. Each posting thread adds the hits to the stripe chosen by its
+     * thread id, so the threads don't compete for single enqueue point. Useful with many cores and many threads posting
+     * the hits, for ex. number of cores. Rounded up to the power of two and {@link #setBatchQueueSize(int)} is shared
+     * across the stripes. Default is <code>1</code>, which uses single shared queue.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setBatchQueueStripes(int batchQueueStripes) {
+        this.batchQueueStripes = batchQueueStripes;
+        return this;
+    }
+
+    public int getOffHeapLaneBytes() {
+        return offHeapLaneBytes;
+    }
+
+    /**
+     * Size in bytes of the direct (off-heap) buffer to keep the batched hits of each priority lane in, instead of the
+     * request objects on the heap. Hits are kept as encoded bytes until they are sent, so a large backlog of hits (for
+     * ex. while Google Analytics is not reachable) doesn't put pressure on the garbage collector. Lane is full when
+     * either this many bytes or {@link #setLaneQueueSize(HitPriority, int)} hits are queued. Hits whose caller waits
+     * for the delivery are still kept on the heap. Takes precedence over {@link #setBatchQueueStripes(int)}. Default is
+     * <code>0</code>, which keeps the hits on the heap.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setOffHeapLaneBytes(int offHeapLaneBytes) {
+        this.offHeapLaneBytes = offHeapLaneBytes;
+        return this;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Maximum number of batches which can be posted to Google Analytics at the same time. Each batch in flight uses its
+     * own sender thread and http connection, so it should not be more than {@link #setMaxHttpConnectionsPerRoute(int)}.
+     * With an {@link com.brsanthu.googleanalytics.httpclient.AsyncHttpClient}, a single sender thread keeps the batches
+     * in flight without waiting for them. Default is <code>1</code>.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    public long getMaxBatchDelayMillis() {
+        return maxBatchDelayMillis;
+    }
+
+    /**
+     * Maximum time a hit can wait in a partially filled batch before the batch is sent anyway. This allows large batch
+     * sizes under load while still bounding the delivery latency when the traffic is low. Default is <code>0</code>,
+     * which disables the time based flush and batches are sent only when full or when flushed explicitly.
+     *
+     * <p>
+     * This is <strong>initialization</strong> level configuration (must be set while creating GoogleAnalytics object).
+     * </p>
+     */
+    public GoogleAnalyticsConfig setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        return this;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.brsanthu.googleanalytics;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
 import com.brsanthu.googleanalytics.request.GoogleAnalyticsRequest;
@@ -9,4 +10,21 @@ public interface GoogleAnalyticsExecutor {
     GoogleAnalyticsResponse post(GoogleAnalyticsRequest<?> request);
 
     Future<GoogleAnalyticsResponse> postAsync(GoogleAnalyticsRequest<?> request);
+
+    /**
+     * Sends the request asynchronously without building any response for it, for the callers which never look at the
+     * response. Default implementation just posts it with {@link #postAsync}.
+     */
+    default void fire(GoogleAnalyticsRequest<?> request) {
+        postAsync(request);
+    }
+
+    /**
+     * Posts the request asynchronously and returns the future which completes once the hit is delivered, or completes
+     * exceptionally if the hit is dropped or cannot be delivered. Default implementation just runs {@link #post}
+     * asynchronously.
+     */
+    default CompletableFuture<GoogleAnalyticsResponse> postCompletable(GoogleAnalyticsRequest<?> request) {
+        return CompletableFuture.supplyAsync(() -> post(request));
+    }
 }
@@ -17,4 +17,109 @@ public interface GoogleAnalyticsStats {
     long getSocialHits();
 
     long getExceptionHits();
+
+    /**
+     * Number of hits which were accepted but couldn't be sent because internal buffers or executor queue were full, or
+     * the instance was closed.
+     */
+    long getDroppedHits();
+
+    /**
+     * Number of hits not sent because their client was not picked by the sampling.
+     */
+    long getSampledOutHits();
+
+    /**
+     * Number of hits not sent because their tracking id or client id was over the configured quota.
+     */
+    long getOverQuotaHits();
+
+    /**
+     * Number of hits not sent because they were queued for longer than Google Analytics accepts.
+     */
+    long getExpiredHits();
+
+    /**
+     * Number of times a hit or batch was sent again after a failure.
+     */
+    long getRetryAttempts();
+
+    /**
+     * Number of hits or batches which were sent successfully after one or more retries.
+     */
+    long getRetrySuccesses();
+
+    /**
+     * Number of hits or batches which failed and were not retried any further, as retries or the retry budget ran
+     * out.
+     */
+    long getRetryGiveUps();
+
+    /**
+     * Number of hits or batches not sent because the circuit breaker was open.
+     */
+    long getCircuitOpenRejections();
+
+    /**
+     * Number of hits posted to Google Analytics, individually or as part of a batch.
+     */
+    long getSentHits();
+
+    /**
+     * Number of hits accepted by Google Analytics, that is posted and answered with a 2xx status.
+     */
+    long getDeliveredHits();
+
+    /**
+     * Number of asynchronous hits posted in the calling thread by {@link OverloadPolicy#CALLER_RUNS}.
+     */
+    long getOverloadCallerRunsHits();
+
+    /**
+     * Number of asynchronous hits dropped by {@link OverloadPolicy#DROP_NEWEST}.
+     */
+    long getOverloadDroppedNewestHits();
+
+    /**
+     * Number of queued asynchronous hits dropped by {@link OverloadPolicy#DROP_OLDEST}.
+     */
+    long getOverloadDroppedOldestHits();
+
+    /**
+     * Number of asynchronous hits dropped by {@link OverloadPolicy#BLOCK} after waiting for the timeout.
+     */
+    long getOverloadBlockTimeoutHits();
+
+    /**
+     * Number of asynchronous hits dropped by {@link OverloadPolicy#PROBABILISTIC}.
+     */
+    long getOverloadShedHits();
+
+    /**
+     * Number of hits which were not sent because they were larger than what Measurement Protocol accepts.
+     */
+    long getOversizedHits();
+
+    /**
+     * Number of hits dropped while the heap is under pressure (low priority ones, or normal priority ones too if no hit
+     * type is in the low lane).
+     */
+    long getMemoryPressureShedHits();
+
+    /**
+     * Number of batches which are being sent at the moment.
+     */
+    int getInFlightBatches();
+
+    /**
+     * Batch size in use at the moment. It varies only when adaptive batching is enabled.
+     */
+    int getCurrentBatchSize();
+
+    /**
+     * Bytes of the hits which are buffered at the moment, as counted against
+     * {@link GoogleAnalyticsConfig#getMaxBufferedBytes()}. Hits waiting for the executor are only counted when that is
+     * set.
+     */
+    long getBufferedBytes();
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics;
+
+/**
+ * Priority lane of a hit, configured per hit type with {@link GoogleAnalyticsConfig#setHitPriority(String, HitPriority)}.
+ * Each lane has its own batch queue and share of each batch. Higher lanes are drained first and shed last.
+ *
+ * @author Santhosh Kumar
+ */
+public enum HitPriority {
+    /**
+     * Hits which should not be lost, like ecommerce hits. They are never dropped by the {@link OverloadPolicy}, but
+     * posted in the calling thread instead.
+     */
+    HIGH,
+
+    /**
+     * Default lane for all hit types not configured otherwise.
+     */
+    NORMAL,
+
+    /**
+     * Hits which can be given up first.
+     */
+    LOW
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics;
+
+/**
+ * What to do with an asynchronous hit when the executor queue is full, or a hit when the
+ * {@link GoogleAnalyticsConfig#getMaxBufferedBytes()} budget is used up. Hits handled by each policy are counted in
+ * {@link GoogleAnalyticsStats}.
+ *
+ * @author Santhosh Kumar
+ */
+public enum OverloadPolicy {
+    /**
+     * Posts the hit in the calling thread. Nothing is lost but the caller pays for the network call.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Drops the hit being posted.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drops the oldest hit waiting in the queue to make room for the hit being posted.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Waits up to {@link GoogleAnalyticsConfig#getOverloadBlockTimeoutMillis()} for room in the queue and drops the hit
+     * if there is still no room.
+     */
+    BLOCK,
+
+    /**
+     * Starts dropping the hits randomly once the queue is filled beyond
+     * {@link GoogleAnalyticsConfig#getOverloadShedThreshold()}, with drop probability growing linearly to 1 as queue
+     * gets full. This sheds the load gradually before the queue is full.
+     */
+    PROBABILISTIC
+}
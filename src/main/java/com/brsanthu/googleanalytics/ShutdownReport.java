@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics;
+
+/**
+ * Outcome of closing the {@link GoogleAnalytics} instance, in terms of the hits which were pending when it was closed.
+ *
+ * @author Santhosh Kumar
+ */
+public class ShutdownReport {
+    private final long drainedHits;
+    private final long failedHits;
+    private final long droppedHits;
+    private final long abandonedHits;
+
+    public ShutdownReport(long drainedHits, long failedHits, long droppedHits, long abandonedHits) {
+        this.drainedHits = drainedHits;
+        this.failedHits = failedHits;
+        this.droppedHits = droppedHits;
+        this.abandonedHits = abandonedHits;
+    }
+
+    /**
+     * Number of hits sent to Google Analytics while closing and accepted by it.
+     */
+    public long getDrainedHits() {
+        return drainedHits;
+    }
+
+    /**
+     * Number of hits sent to Google Analytics while closing, but not accepted by it (error status or no response).
+     */
+    public long getFailedHits() {
+        return failedHits;
+    }
+
+    /**
+     * Number of hits dropped while closing, as they couldn't be sent before the deadline or were posted after close.
+     */
+    public long getDroppedHits() {
+        return droppedHits;
+    }
+
+    /**
+     * Number of hits which were still being sent at the deadline. They may or may not reach Google Analytics.
+     */
+    public long getAbandonedHits() {
+        return abandonedHits;
+    }
+
+    /**
+     * Returns true if all the pending hits were delivered before the deadline.
+     */
+    public boolean isComplete() {
+        return failedHits == 0 && droppedHits == 0 && abandonedHits == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport [drainedHits=" + drainedHits + ", failedHits=" + failedHits + ", droppedHits=" + droppedHits + ", abandonedHits=" + abandonedHits + "]";
+    }
+}
@@ -0,0 +1,177 @@
+package com.brsanthu.googleanalytics.httpclient;
+
+import static com.brsanthu.googleanalytics.internal.GaUtils.isNotEmpty;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
+import com.brsanthu.googleanalytics.GoogleAnalyticsException;
+import com.brsanthu.googleanalytics.internal.GoogleAnalyticsThreadFactory;
+
+/**
+ * Http client based on the non-blocking Apache HttpAsyncClient, in which a few I/O threads keep many requests in
+ * flight. Blocking methods just wait for their async counterparts.
+ * <p>
+ * Needs <code>org.apache.httpcomponents:httpasyncclient</code>, which is an optional dependency of this library.
+ */
+public class ApacheHttpAsyncClientImpl implements AsyncHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(ApacheHttpAsyncClientImpl.class);
+    private static final ContentType FORM_CONTENT_TYPE = ContentType.create(URLEncodedUtils.CONTENT_TYPE, StandardCharsets.UTF_8);
+
+    private CloseableHttpAsyncClient apacheHttpClient;
+
+    public ApacheHttpAsyncClientImpl(GoogleAnalyticsConfig config) {
+        apacheHttpClient = createHttpClient(config);
+        apacheHttpClient.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            apacheHttpClient.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    protected CloseableHttpAsyncClient createHttpClient(GoogleAnalyticsConfig config) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(Math.max(config.getHttpIoThreads(), 1))
+                .setConnectTimeout(config.getHttpConnectTimeoutMillis()).setSoTimeout(config.getHttpSocketTimeoutMillis()).build();
+
+        DefaultConnectingIOReactor ioReactor;
+        try {
+            ioReactor = new DefaultConnectingIOReactor(ioReactorConfig,
+                    new GoogleAnalyticsThreadFactory(config.getThreadNameFormat().replace("{0}", "io-{0}")));
+        } catch (IOReactorException e) {
+            throw new GoogleAnalyticsException("Couldn't create the I/O reactor of the http client", e);
+        }
+
+        int maxPerRoute = Math.max(config.getMaxHttpConnectionsPerRoute(), 1);
+        PoolingNHttpClientConnectionManager connManager = new PoolingNHttpClientConnectionManager(ioReactor);
+        connManager.setDefaultMaxPerRoute(maxPerRoute);
+        connManager.setMaxTotal(Math.max(connManager.getMaxTotal(), maxPerRoute));
+
+        // Connection request timeout bounds the wait for a pooled connection, which is otherwise unlimited too
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(config.getHttpConnectTimeoutMillis())
+                .setSocketTimeout(config.getHttpSocketTimeoutMillis()).setConnectionRequestTimeout(config.getHttpConnectTimeoutMillis()).build();
+
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom().setConnectionManager(connManager).setDefaultRequestConfig(requestConfig);
+
+        if (isNotEmpty(config.getUserAgent())) {
+            builder.setUserAgent(config.getUserAgent());
+        }
+
+        if (isNotEmpty(config.getProxyHost())) {
+            builder.setProxy(new HttpHost(config.getProxyHost(), config.getProxyPort()));
+
+            if (isNotEmpty(config.getProxyUserName())) {
+                BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(config.getProxyHost(), config.getProxyPort()),
+                        new UsernamePasswordCredentials(config.getProxyUserName(), config.getProxyPassword()));
+                builder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public boolean isBatchSupported() {
+        return true;
+    }
+
+    /**
+     * Posts the entity and completes the future with the response built from its status code, or with status code
+     * <code>0</code> if it couldn't be sent. Response is read fully by the client, so there is nothing to release.
+     */
+    protected <R> CompletableFuture<R> execute(String url, HttpEntity entity, Object req, IntFunction<R> response) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(entity);
+
+        try {
+            apacheHttpClient.execute(httpPost, new FutureCallback<org.apache.http.HttpResponse>() {
+                @Override
+                public void completed(org.apache.http.HttpResponse httpResp) {
+                    future.complete(response.apply(httpResp.getStatusLine().getStatusCode()));
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    logFailure(req, e);
+                    future.complete(response.apply(0));
+                }
+
+                @Override
+                public void cancelled() {
+                    future.complete(response.apply(0));
+                }
+            });
+        } catch (Exception e) {
+            // Client is closed
+            logFailure(req, e);
+            future.complete(response.apply(0));
+        }
+
+        return future;
+    }
+
+    private static void logFailure(Object req, Exception e) {
+        if (e instanceof UnknownHostException) {
+            logger.warn("Couldn't connect to Google Analytics. Internet may not be available. " + e.toString());
+        } else if (e instanceof IOException) {
+            // Connection failures and timeouts are expected during outages, so stack trace adds nothing
+            logger.warn("Couldn't send the Google Analytics tracker request. " + e.toString());
+        } else {
+            logger.warn("Exception while sending the Google Analytics tracker request " + req, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> postAsync(HttpRequest req) {
+        return execute(req.getUrl(), new StringEntity(req.getEncodedBody(), FORM_CONTENT_TYPE), req,
+                statusCode -> new HttpResponse().setStatusCode(statusCode));
+    }
+
+    @Override
+    public CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req) {
+        return execute(req.getUrl(), BatchUrlEncodedFormEntity.fromRequests(req.getRequests()), req,
+                statusCode -> new HttpBatchResponse().setStatusCode(statusCode));
+    }
+
+    @Override
+    public HttpResponse post(HttpRequest req) {
+        return postAsync(req).join();
+    }
+
+    @Override
+    public HttpBatchResponse postBatch(HttpBatchRequest req) {
+        return postBatchAsync(req).join();
+    }
+}
@@ -5,25 +5,23 @@ import static com.brsanthu.googleanalytics.internal.GaUtils.isNotEmpty;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
-import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +30,7 @@ import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
 
 public class ApacheHttpClientImpl implements HttpClient {
     private static final Logger logger = LoggerFactory.getLogger(ApacheHttpClientImpl.class);
+    private static final ContentType FORM_CONTENT_TYPE = ContentType.create(URLEncodedUtils.CONTENT_TYPE, StandardCharsets.UTF_8);
 
     private CloseableHttpClient apacheHttpClient;
 
@@ -52,7 +51,11 @@ public class ApacheHttpClientImpl implements HttpClient {
         PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
         connManager.setDefaultMaxPerRoute(Math.max(config.getMaxHttpConnectionsPerRoute(), 1));
 
-        HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connManager);
+        // Connection request timeout bounds the wait for a pooled connection, which is otherwise unlimited too
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(config.getHttpConnectTimeoutMillis())
+                .setSocketTimeout(config.getHttpSocketTimeoutMillis()).setConnectionRequestTimeout(config.getHttpConnectTimeoutMillis()).build();
+
+        HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connManager).setDefaultRequestConfig(requestConfig);
 
         if (isNotEmpty(config.getUserAgent())) {
             builder.setUserAgent(config.getUserAgent());
@@ -86,12 +89,6 @@ public class ApacheHttpClientImpl implements HttpClient {
         return apacheHttpClient.execute(httpPost);
     }
 
-    protected List<NameValuePair> createNameValuePairs(HttpRequest req) {
-        List<NameValuePair> parmas = new ArrayList<>();
-        req.getBodyParams().forEach((key, value) -> parmas.add(new BasicNameValuePair(key, value)));
-        return parmas;
-    }
-
     @Override
     public HttpResponse post(HttpRequest req) {
         HttpResponse resp = new HttpResponse();
@@ -99,52 +96,61 @@ public class ApacheHttpClientImpl implements HttpClient {
 
         try {
 
-            httpResp = execute(req.getUrl(), new UrlEncodedFormEntity(createNameValuePairs(req), StandardCharsets.UTF_8));
+            httpResp = execute(req.getUrl(), new StringEntity(req.getEncodedBody(), FORM_CONTENT_TYPE));
             resp.setStatusCode(httpResp.getStatusLine().getStatusCode());
 
         } catch (Exception e) {
             if (e instanceof UnknownHostException) {
                 logger.warn("Couldn't connect to Google Analytics. Internet may not be available. " + e.toString());
+            } else if (e instanceof IOException) {
+                // Connection failures and timeouts are expected during outages, so stack trace adds nothing
+                logger.warn("Couldn't send the Google Analytics tracker request. " + e.toString());
             } else {
                 logger.warn("Exception while sending the Google Analytics tracker request " + req, e);
             }
 
         } finally {
-            EntityUtils.consumeQuietly(httpResp.getEntity());
-            try {
-                httpResp.close();
-            } catch (Exception e2) {
-                // ignore
-            }
+            closeQuietly(httpResp);
         }
 
         return resp;
     }
 
+    private static void closeQuietly(CloseableHttpResponse httpResp) {
+        // Response is null if request couldn't be sent at all
+        if (httpResp == null) {
+            return;
+        }
+
+        EntityUtils.consumeQuietly(httpResp.getEntity());
+        try {
+            httpResp.close();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
     @Override
     public HttpBatchResponse postBatch(HttpBatchRequest req) {
         HttpBatchResponse resp = new HttpBatchResponse();
         CloseableHttpResponse httpResp = null;
 
         try {
-            List<List<NameValuePair>> listOfReqPairs = req.getRequests().stream().map(this::createNameValuePairs).collect(Collectors.toList());
-            httpResp = execute(req.getUrl(), new BatchUrlEncodedFormEntity(listOfReqPairs));
+            httpResp = execute(req.getUrl(), BatchUrlEncodedFormEntity.fromRequests(req.getRequests()));
             resp.setStatusCode(httpResp.getStatusLine().getStatusCode());
 
         } catch (Exception e) {
             if (e instanceof UnknownHostException) {
                 logger.warn("Couldn't connect to Google Analytics. Internet may not be available. " + e.toString());
+            } else if (e instanceof IOException) {
+                // Connection failures and timeouts are expected during outages, so stack trace adds nothing
+                logger.warn("Couldn't send the Google Analytics tracker request. " + e.toString());
             } else {
                 logger.warn("Exception while sending the Google Analytics tracker request " + req, e);
             }
 
         } finally {
-            EntityUtils.consumeQuietly(httpResp.getEntity());
-            try {
-                httpResp.close();
-            } catch (Exception e2) {
-                // ignore
-            }
+            closeQuietly(httpResp);
         }
 
         return resp;
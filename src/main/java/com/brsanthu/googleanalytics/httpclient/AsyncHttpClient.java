@@ -0,0 +1,49 @@
+package com.brsanthu.googleanalytics.httpclient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Http client which can send the requests without blocking the calling thread. Like the blocking methods, returned
+ * futures complete with status code <code>0</code> if the request couldn't be sent, rather than exceptionally.
+ */
+public interface AsyncHttpClient extends HttpClient {
+    CompletableFuture<HttpResponse> postAsync(HttpRequest req);
+
+    CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req);
+
+    /**
+     * Posts the request through given client without blocking if it is an {@link AsyncHttpClient}, otherwise in the
+     * calling thread. Either way, an exception thrown while posting completes the future exceptionally.
+     */
+    static CompletableFuture<HttpResponse> sendAsync(HttpClient client, HttpRequest req) {
+        if (client instanceof AsyncHttpClient) {
+            return ((AsyncHttpClient) client).postAsync(req);
+        }
+
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(client.post(req));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Posts the batch through given client without blocking if it is an {@link AsyncHttpClient}, otherwise in the
+     * calling thread. Either way, an exception thrown while posting completes the future exceptionally.
+     */
+    static CompletableFuture<HttpBatchResponse> sendBatchAsync(HttpClient client, HttpBatchRequest req) {
+        if (client instanceof AsyncHttpClient) {
+            return ((AsyncHttpClient) client).postBatchAsync(req);
+        }
+
+        CompletableFuture<HttpBatchResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(client.postBatch(req));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -10,16 +10,36 @@ import org.apache.http.entity.StringEntity;
 
 public class BatchUrlEncodedFormEntity extends StringEntity {
 
+    public static final String REQUEST_SEPARATOR = "\r\n";
+
     public BatchUrlEncodedFormEntity(List<List<NameValuePair>> parameters) {
         super(constructCombinedEntityString(parameters), ContentType.create(URLEncodedUtils.CONTENT_TYPE));
     }
 
+    private BatchUrlEncodedFormEntity(String combinedEntityString) {
+        super(combinedEntityString, ContentType.create(URLEncodedUtils.CONTENT_TYPE));
+    }
+
+    /**
+     * Creates the entity by combining already encoded bodies of the requests.
+     */
+    public static BatchUrlEncodedFormEntity fromRequests(List<HttpRequest> requests) {
+        StringBuilder builder = new StringBuilder();
+
+        for (HttpRequest request : requests) {
+            builder.append(request.getEncodedBody());
+            builder.append(REQUEST_SEPARATOR);
+        }
+
+        return new BatchUrlEncodedFormEntity(builder.toString());
+    }
+
     private static String constructCombinedEntityString(final List<List<NameValuePair>> parameters) {
         StringBuilder builder = new StringBuilder();
 
         for (List<? extends NameValuePair> param : parameters) {
             builder.append(URLEncodedUtils.format(param, StandardCharsets.UTF_8));
-            builder.append("\r\n");
+            builder.append(REQUEST_SEPARATOR);
         }
 
         return builder.toString();
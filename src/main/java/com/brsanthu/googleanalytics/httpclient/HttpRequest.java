@@ -1,29 +1,200 @@
 package com.brsanthu.googleanalytics.httpclient;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class HttpRequest {
+    public static final long NO_HIT_TIME = Long.MIN_VALUE;
+    public static final long NO_SPOOL_POSITION = -1;
+    private static final String QUEUE_TIME = "qt";
+
     private String contentType;
     private String method;
     private String url;
+    // Requests created from encoded params decode them only when asked for, and keep the queue time aside till then
     private Map<String, String> bodyParams = new HashMap<>();
+    private String queueTime;
+    private String encodedBody;
+    private String encodedParams;
+    private long hitNanos = NO_HIT_TIME;
+    private long spoolPosition = NO_SPOOL_POSITION;
 
     public HttpRequest(String url) {
         this.setUrl(url);
     }
 
+    /**
+     * Creates the request from already encoded params (without the queue time), which are sent as is. They are only
+     * decoded if {@link #getBodyParams()} is called.
+     */
+    public static HttpRequest fromEncodedParams(String url, String encodedParams) {
+        HttpRequest httpReq = new HttpRequest(url);
+        httpReq.bodyParams = null;
+        httpReq.encodedParams = encodedParams;
+        return httpReq;
+    }
+
     public HttpRequest post() {
         setMethod("POST");
         return this;
     }
 
     public HttpRequest addBodyParam(String key, String value) {
-        bodyParams.put(key, value);
+        encodedBody = null;
+
+        if (QUEUE_TIME.equals(key) && bodyParams == null) {
+            queueTime = value;
+            return this;
+        }
+
+        getBodyParams().put(key, value);
+        if (!QUEUE_TIME.equals(key)) {
+            encodedParams = null;
+        }
         return this;
     }
 
+    /**
+     * Returns the body params in <code>application/x-www-form-urlencoded</code> format. Value is computed once and
+     * reused until body params are changed. Encoded body only contains ascii characters, so its length is same as its
+     * size in bytes.
+     * <p>
+     * Queue time is kept at the end and encoded separately, so updating it before each send attempt doesn't encode the
+     * rest of the params again.
+     */
+    public String getEncodedBody() {
+        if (encodedBody == null) {
+            String encodedParams = getEncodedParams();
+            String queueTime = getQueueTime();
+            if (queueTime == null) {
+                encodedBody = encodedParams;
+            } else {
+                encodedBody = encodedParams + (encodedParams.isEmpty() ? "" : "&") + QUEUE_TIME + "=" + encode(queueTime);
+            }
+        }
+
+        return encodedBody;
+    }
+
+    /**
+     * Returns the encoded body without the queue time.
+     */
+    public String getEncodedParams() {
+        if (encodedParams == null) {
+            StringBuilder sb = new StringBuilder();
+            bodyParams.forEach((key, value) -> {
+                if (QUEUE_TIME.equals(key)) {
+                    return;
+                }
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(encode(key)).append('=').append(encode(value));
+            });
+            encodedParams = sb.toString();
+        }
+
+        return encodedParams;
+    }
+
+    private static Map<String, String> decodeParams(String encodedParams) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : encodedParams.split("&")) {
+            int separator = param.indexOf('=');
+            if (separator > 0) {
+                params.put(decode(param.substring(0, separator)), decode(param.substring(separator + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        if (value == null) {
+            return "";
+        }
+
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the queue time param, without decoding the rest of the params.
+     */
+    public String getQueueTime() {
+        return bodyParams == null ? queueTime : bodyParams.get(QUEUE_TIME);
+    }
+
+    public long getHitNanos() {
+        return hitNanos;
+    }
+
+    /**
+     * Sets the {@link System#nanoTime()} of when the hit happened, so its queue time (<code>qt</code>) can be set each
+     * time it is sent.
+     */
+    public HttpRequest setHitNanos(long hitNanos) {
+        this.hitNanos = hitNanos;
+        return this;
+    }
+
+    public long getSpoolPosition() {
+        return spoolPosition;
+    }
+
+    /**
+     * Sets the position of the hit in the spool, where it is acknowledged once sent.
+     */
+    public HttpRequest setSpoolPosition(long spoolPosition) {
+        this.spoolPosition = spoolPosition;
+        return this;
+    }
+
+    public boolean hasHitTime() {
+        return hitNanos != NO_HIT_TIME;
+    }
+
+    /**
+     * Sets the queue time parameter to the time since the hit happened, unless it is under a milli second and queue
+     * time was not set already. Does nothing if hit time is not known.
+     *
+     * @return queue time in millis.
+     */
+    public long updateQueueTime(long nanoTime) {
+        if (!hasHitTime()) {
+            return 0;
+        }
+
+        long queueTime = TimeUnit.NANOSECONDS.toMillis(Math.max(nanoTime - hitNanos, 0));
+        if (queueTime > 0 || (bodyParams == null ? this.queueTime != null : bodyParams.containsKey(QUEUE_TIME))) {
+            addBodyParam(QUEUE_TIME, String.valueOf(queueTime));
+        }
+        return queueTime;
+    }
+
     public Map<String, String> getBodyParams() {
+        if (bodyParams == null) {
+            bodyParams = decodeParams(encodedParams);
+            if (queueTime != null) {
+                bodyParams.put(QUEUE_TIME, queueTime);
+            }
+        }
         return bodyParams;
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the batch size and linger delay at runtime, between 1 and the configured batch size and between a quarter of
+ * and the configured max batch delay.
+ * <ul>
+ * <li>Batch size grows by one while hits pile up in the queue (at least two batches worth) and sends are healthy.</li>
+ * <li>It is halved when a batch fails and reduced by one while send latency is more than twice its baseline.</li>
+ * <li>When a linger flush finds fewer hits than a batch, traffic is low, so batch size moves half way towards that
+ * number, which sends the next hits without waiting for the linger delay.</li>
+ * <li>Linger delay stretches from a quarter of the max delay up to the max as the error rate grows, so a struggling
+ * endpoint gets fewer requests.</li>
+ * </ul>
+ * Latency and error rate are exponentially weighted moving averages. Baseline latency is the lowest average seen, which
+ * drifts up slowly so that a lasting change in latency becomes the new baseline.
+ *
+ * @author Santhosh Kumar
+ */
+public class AdaptiveBatchController {
+    private static final double ALPHA = 0.2;
+    private static final double BASELINE_DRIFT = 1.01;
+    private static final double SLOW_FACTOR = 2;
+    private static final double HEALTHY_ERROR_RATE = 0.1;
+
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+
+    private volatile int batchSize;
+    private volatile long lingerMillis;
+
+    private double latencyNanos = -1;
+    private double baselineLatencyNanos = -1;
+    private double errorRate = 0;
+
+    public AdaptiveBatchController(int maxBatchSize, long maxLingerMillis) {
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxLingerMillis = Math.max(maxLingerMillis, 0);
+        this.batchSize = this.maxBatchSize;
+        this.lingerMillis = minLingerMillis();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Called by the sender threads after each batch is posted.
+     */
+    public synchronized void onBatchSent(long latency, TimeUnit unit, boolean success) {
+        errorRate = ewma(errorRate, success ? 0 : 1);
+
+        if (success) {
+            latencyNanos = latencyNanos < 0 ? unit.toNanos(latency) : ewma(latencyNanos, unit.toNanos(latency));
+            baselineLatencyNanos = baselineLatencyNanos < 0 ? latencyNanos : Math.min(baselineLatencyNanos * BASELINE_DRIFT, latencyNanos);
+
+            if (isSlow()) {
+                batchSize = Math.max(batchSize - 1, 1);
+            }
+        } else {
+            batchSize = Math.max(batchSize / 2, 1);
+        }
+
+        lingerMillis = minLingerMillis() + Math.round((maxLingerMillis - minLingerMillis()) * errorRate);
+    }
+
+    /**
+     * Called by the batch queue drainer before cutting a batch.
+     */
+    public synchronized void onQueueDepth(int depth) {
+        if (depth >= 2 * batchSize && errorRate < HEALTHY_ERROR_RATE && !isSlow()) {
+            batchSize = Math.min(batchSize + 1, maxBatchSize);
+        }
+    }
+
+    /**
+     * Called when the linger delay elapses, with the number of hits it is going to send.
+     */
+    public synchronized void onLingerFlush(int hits) {
+        if (hits < batchSize) {
+            batchSize = Math.max((batchSize + hits) / 2, 1);
+        }
+    }
+
+    private boolean isSlow() {
+        return baselineLatencyNanos > 0 && latencyNanos > SLOW_FACTOR * baselineLatencyNanos;
+    }
+
+    private long minLingerMillis() {
+        return maxLingerMillis / 4;
+    }
+
+    private static double ewma(double average, double value) {
+        return average + ALPHA * (value - average);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveBatchController [batchSize=" + batchSize + ", lingerMillis=" + lingerMillis + ", latencyNanos=" + latencyNanos
+                + ", baselineLatencyNanos=" + baselineLatencyNanos + ", errorRate=" + errorRate + "]";
+    }
+}
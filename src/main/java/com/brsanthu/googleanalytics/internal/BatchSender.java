@@ -0,0 +1,306 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+
+/**
+ * Sender stage of the batching path. Completed batches are handed off to this stage and are posted by its own threads,
+ * so the threads which post the hits never do the network I/O. Each sender thread has at most one batch in flight, so
+ * number of threads is the number of batches which can be in flight at the same time.
+ * <p>
+ * Sender created with {@link #async(int, int, ThreadFactory, Function)} uses a single thread instead, which starts
+ * sending a batch whenever less than the max batches are in flight and doesn't wait for the response. In flight
+ * batches are bounded by a semaphore, which is released as each send completes.
+ * <p>
+ * Handoff queue is expected to be filled by single thread at a time (the batch queue drainer), so that
+ * {@link #hasCapacity()} followed by {@link #submit(HttpBatchRequest)} always succeeds.
+ *
+ * @author Santhosh Kumar
+ */
+public class BatchSender implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchSender.class);
+
+    private final BlockingQueue<PendingBatch> handoffQueue;
+    private final Consumer<HttpBatchRequest> sendFunction;
+    private final Function<HttpBatchRequest, CompletableFuture<?>> asyncSendFunction;
+    private final int maxInFlightBatches;
+    private final Semaphore inFlightPermits;
+    private final Thread[] senderThreads;
+    private final AtomicInteger inFlightBatches = new AtomicInteger();
+    private final AtomicInteger inFlightHits = new AtomicInteger();
+
+    // Sequence numbers of the batches which are submitted but not yet sent, in the order they were submitted
+    private final ConcurrentSkipListSet<Long> pendingSequences = new ConcurrentSkipListSet<>();
+    private final Object completionLock = new Object();
+
+    private volatile boolean running = true;
+    private volatile long submittedBatches = 0;
+
+    public BatchSender(int queueSize, int maxInFlightBatches, ThreadFactory threadFactory, Consumer<HttpBatchRequest> sendFunction) {
+        this(queueSize, maxInFlightBatches, Math.max(maxInFlightBatches, 1), threadFactory, sendFunction, null);
+    }
+
+    private BatchSender(int queueSize, int maxInFlightBatches, int threads, ThreadFactory threadFactory, Consumer<HttpBatchRequest> sendFunction,
+            Function<HttpBatchRequest, CompletableFuture<?>> asyncSendFunction) {
+        this.handoffQueue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.sendFunction = sendFunction;
+        this.asyncSendFunction = asyncSendFunction;
+        this.maxInFlightBatches = Math.max(maxInFlightBatches, 1);
+        this.inFlightPermits = new Semaphore(this.maxInFlightBatches);
+        this.senderThreads = new Thread[threads];
+
+        for (int i = 0; i < senderThreads.length; i++) {
+            senderThreads[i] = threadFactory.newThread(asyncSendFunction == null ? this::run : this::runAsync);
+            senderThreads[i].start();
+        }
+    }
+
+    /**
+     * Creates the sender which sends the batches with given function without waiting for them, on a single thread.
+     * Batch is considered sent when the returned future completes, either way.
+     */
+    public static BatchSender async(int queueSize, int maxInFlightBatches, ThreadFactory threadFactory,
+            Function<HttpBatchRequest, CompletableFuture<?>> sendFunction) {
+        return new BatchSender(queueSize, maxInFlightBatches, 1, threadFactory, null, sendFunction);
+    }
+
+    public int getInFlightBatches() {
+        return inFlightBatches.get();
+    }
+
+    public int getInFlightHits() {
+        return inFlightHits.get();
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public boolean hasCapacity() {
+        return handoffQueue.remainingCapacity() > 0;
+    }
+
+    /**
+     * Hands off the batch to sender thread.
+     *
+     * @return false if handoff queue is full or the sender is closed.
+     */
+    public boolean submit(HttpBatchRequest batch) {
+        if (!running) {
+            return false;
+        }
+
+        long sequence = submittedBatches + 1;
+        pendingSequences.add(sequence);
+
+        if (!handoffQueue.offer(new PendingBatch(sequence, batch))) {
+            pendingSequences.remove(sequence);
+            return false;
+        }
+
+        submittedBatches = sequence;
+        return true;
+    }
+
+    /**
+     * Waits until all batches submitted before this call are sent. Batches submitted after this call are not waited
+     * for, even if they are sent by other threads in the mean time.
+     */
+    public void awaitSent() throws InterruptedException {
+        long target = submittedBatches;
+
+        synchronized (completionLock) {
+            while (!isSent(target) && isAnySenderAlive()) {
+                completionLock.wait(100);
+            }
+        }
+    }
+
+    private boolean isSent(long sequence) {
+        Long oldestPending = pendingSequences.isEmpty() ? null : pendingSequences.first();
+        return oldestPending == null || oldestPending > sequence;
+    }
+
+    private boolean isAnySenderAlive() {
+        for (Thread thread : senderThreads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void run() {
+        while (running || !handoffQueue.isEmpty()) {
+            PendingBatch batch = null;
+            try {
+                batch = handoffQueue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Closing, keep going until the queue is drained
+                continue;
+            }
+
+            if (batch == null) {
+                continue;
+            }
+
+            int hits = batch.request.getRequests().size();
+            inFlightBatches.incrementAndGet();
+            inFlightHits.addAndGet(hits);
+            try {
+                sendFunction.accept(batch.request);
+            } catch (Exception e) {
+                logger.warn("Exception while sending the Google Analytics batch", e);
+            } finally {
+                inFlightHits.addAndGet(-hits);
+                inFlightBatches.decrementAndGet();
+                completed(batch);
+            }
+        }
+    }
+
+    private void runAsync() {
+        while (running || !handoffQueue.isEmpty()) {
+            PendingBatch batch = null;
+            try {
+                if (!inFlightPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                batch = handoffQueue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Closing, keep going until the queue is drained
+                continue;
+            }
+
+            if (batch == null) {
+                inFlightPermits.release();
+                continue;
+            }
+
+            PendingBatch sending = batch;
+            int hits = sending.request.getRequests().size();
+            inFlightBatches.incrementAndGet();
+            inFlightHits.addAndGet(hits);
+
+            CompletableFuture<?> future;
+            try {
+                future = asyncSendFunction.apply(sending.request);
+            } catch (Exception e) {
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                future = failed;
+            }
+
+            future.whenComplete((resp, error) -> {
+                if (error != null) {
+                    logger.warn("Exception while sending the Google Analytics batch", error);
+                }
+                inFlightHits.addAndGet(-hits);
+                inFlightBatches.decrementAndGet();
+                completed(sending);
+                inFlightPermits.release();
+            });
+        }
+    }
+
+    private void completed(PendingBatch batch) {
+        pendingSequences.remove(batch.sequence);
+
+        synchronized (completionLock) {
+            completionLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops accepting batches and waits for the already submitted batches to be sent, by all sender threads in
+     * parallel.
+     */
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            for (Thread thread : senderThreads) {
+                thread.join();
+            }
+
+            // Async sends may still be in flight after the thread is done
+            inFlightPermits.acquire(maxInFlightBatches);
+            inFlightPermits.release(maxInFlightBatches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting batches and waits up to the given time for the already submitted batches to be sent, by all
+     * sender threads in parallel.
+     *
+     * @return batches which were not picked up by sender threads in time. Batches being sent at the deadline are left
+     *         to complete on their own, see {@link #getInFlightHits()}.
+     */
+    public List<HttpBatchRequest> close(long timeout, TimeUnit unit) {
+        running = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        try {
+            for (Thread thread : senderThreads) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+                }
+            }
+
+            if (inFlightPermits.tryAcquire(maxInFlightBatches, Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                inFlightPermits.release(maxInFlightBatches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<PendingBatch> pending = new ArrayList<>();
+        handoffQueue.drainTo(pending);
+
+        List<HttpBatchRequest> unsent = new ArrayList<>(pending.size());
+        for (PendingBatch batch : pending) {
+            unsent.add(batch.request);
+            completed(batch);
+        }
+        return unsent;
+    }
+
+    private static class PendingBatch {
+        private final long sequence;
+        private final HttpBatchRequest request;
+
+        private PendingBatch(long sequence, HttpBatchRequest request) {
+            this.sequence = sequence;
+            this.request = request;
+        }
+    }
+}
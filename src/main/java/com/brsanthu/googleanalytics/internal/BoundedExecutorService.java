@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor which limits the number of tasks running at the same time with a semaphore, for the delegates which don't
+ * bound it themselves (like virtual thread per task executor). Tasks beyond the limit wait in a bounded queue, like
+ * they would in a thread pool, and are handed to the delegate as the running ones finish. Tasks which don't fit in the
+ * queue either are rejected, so they are handled as per the {@link com.brsanthu.googleanalytics.OverloadPolicy}.
+ *
+ * @author Santhosh Kumar
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final BlockingQueue<Runnable> queue;
+    private volatile boolean shutdown;
+
+    public BoundedExecutorService(ExecutorService delegate, int maxConcurrency, int queueCapacity) {
+        this.delegate = delegate;
+        this.maxConcurrency = Math.max(maxConcurrency, 1);
+        this.permits = new Semaphore(this.maxConcurrency);
+        this.queue = new LinkedBlockingQueue<>(Math.max(queueCapacity, 1));
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Queue of the tasks waiting for a permit. Tasks must be submitted through the executor, not offered to the queue
+     * directly, but they can be removed from it.
+     */
+    public BlockingQueue<Runnable> getQueue() {
+        return queue;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+
+        if (queue.isEmpty() && permits.tryAcquire()) {
+            submitAcquired(command);
+            return;
+        }
+
+        if (!queue.offer(command)) {
+            throw new RejectedExecutionException("All " + maxConcurrency + " permits are in use and the queue is full");
+        }
+        drain();
+    }
+
+    /**
+     * Waits up to the given time for room in the queue to run the task.
+     *
+     * @return false if no room became available in time.
+     */
+    public boolean tryExecute(Runnable command, long timeout, TimeUnit unit) throws InterruptedException {
+        if (shutdown) {
+            return false;
+        }
+
+        if (queue.isEmpty() && permits.tryAcquire()) {
+            submitAcquired(command);
+            return true;
+        }
+
+        if (!queue.offer(command, timeout, unit)) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Hands off the queued tasks while there are permits. Called after queueing a task and after releasing a permit, so
+     * one of the two always sees both the task and the permit.
+     */
+    private void drain() {
+        while (!queue.isEmpty() && permits.tryAcquire()) {
+            Runnable next = queue.poll();
+            if (next == null) {
+                permits.release();
+            } else {
+                submitAcquired(next);
+            }
+        }
+    }
+
+    private void submitAcquired(Runnable command) {
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                    drain();
+                    tryTerminate();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Shuts down the delegate once the queued tasks are handed off and done, as it wouldn't take them after that.
+     */
+    private void tryTerminate() {
+        if (shutdown && queue.isEmpty() && permits.availablePermits() == maxConcurrency) {
+            delegate.shutdown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    /**
+     * @return the queued tasks which never started. Tasks already handed to the delegate are interrupted.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        delegate.shutdownNow();
+        return queued;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget of the bytes taken by the hits which are buffered anywhere in this library, whether they are waiting in the
+ * executor queue, the batch queue or the batch sender, or are being sent (including the retries). Bytes are reserved
+ * when a hit is buffered and released once it is sent or dropped, so the budget is a hard cap on what is held at any
+ * time.
+ *
+ * @author Santhosh Kumar
+ */
+public class BufferBudget {
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private volatile long limitBytes;
+
+    /**
+     * @param maxBytes max bytes which can be reserved at a time, or 0 for no limit (in which case bytes are still
+     *            counted).
+     */
+    public BufferBudget(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.limitBytes = this.maxBytes;
+    }
+
+    /**
+     * Tells whether there is a limit right now, which there is if max bytes is set or while the budget is shrunk.
+     */
+    public boolean isLimited() {
+        return limitBytes > 0;
+    }
+
+    /**
+     * Reserves the given bytes if they fit in the budget.
+     *
+     * @return false if the budget doesn't have that many bytes left.
+     */
+    public boolean tryReserve(long bytes) {
+        long limit = limitBytes;
+        if (limit <= 0) {
+            usedBytes.addAndGet(bytes);
+            return true;
+        }
+
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + bytes > limit) {
+                return false;
+            }
+        } while (!usedBytes.compareAndSet(used, used + bytes));
+
+        return true;
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Lowers the limit to the given fraction of max bytes, or of the bytes in use if there is no max (but not below
+     * the size of one batch, so hits can still be batched). Bytes already reserved are kept, but nothing more can be
+     * reserved until the bytes in use go below the new limit.
+     */
+    public void shrink(double ratio) {
+        double fraction = Math.min(Math.max(ratio, 0), 1);
+        if (maxBytes > 0) {
+            limitBytes = Math.max((long) (maxBytes * fraction), 1);
+        } else {
+            limitBytes = Math.max((long) (usedBytes.get() * fraction), Constants.MAX_BATCH_BYTES);
+        }
+    }
+
+    /**
+     * Brings the limit back to max bytes, or to no limit if there is no max.
+     */
+    public void restore() {
+        limitBytes = maxBytes;
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * Fraction of the current limit in use, between 0 and 1. Always 0 if there is no limit.
+     */
+    public double getFill() {
+        long limit = limitBytes;
+        return limit > 0 ? Math.min((double) usedBytes.get() / limit, 1) : 0;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
+import com.brsanthu.googleanalytics.httpclient.AsyncHttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+/**
+ * Http client which stops sending the requests through the given client once a number of them fail in a row, so an
+ * outage of Google Analytics doesn't keep the threads waiting on connections and filling the logs.
+ * <p>
+ * Circuit is <em>closed</em> while requests go through. Once the failure threshold is reached it is <em>open</em> and
+ * requests fail right away with status <code>0</code>, without being sent. After the open period, it is
+ * <em>half-open</em> and lets one request through to probe: if it succeeds the circuit closes, otherwise it opens for
+ * another period. Requests which arrive while the probe is in flight fail right away too.
+ * <p>
+ * Asynchronous requests go through the same circuit, and are sent without blocking if the given client is an
+ * {@link AsyncHttpClient}.
+ *
+ * @author Santhosh Kumar
+ */
+public class CircuitBreakerHttpClient implements AsyncHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerHttpClient.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final HttpClient delegate;
+    private final Supplier<GoogleAnalyticsStatsImpl> stats;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicReference<Circuit> circuit = new AtomicReference<>(Circuit.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public CircuitBreakerHttpClient(HttpClient delegate, GoogleAnalyticsConfig config, Supplier<GoogleAnalyticsStatsImpl> stats) {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.failureThreshold = Math.max(config.getCircuitBreakerFailureThreshold(), 1);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(config.getCircuitBreakerOpenMillis(), 0));
+    }
+
+    public State getState() {
+        return circuit.get().state;
+    }
+
+    @Override
+    public HttpResponse post(HttpRequest req) {
+        if (!tryAcquire()) {
+            return new HttpResponse().setStatusCode(0);
+        }
+        return send(() -> delegate.post(req), HttpResponse::getStatusCode);
+    }
+
+    @Override
+    public HttpBatchResponse postBatch(HttpBatchRequest req) {
+        if (!tryAcquire()) {
+            return new HttpBatchResponse().setStatusCode(0);
+        }
+        return send(() -> delegate.postBatch(req), HttpBatchResponse::getStatusCode);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> postAsync(HttpRequest req) {
+        if (!tryAcquire()) {
+            return CompletableFuture.completedFuture(new HttpResponse().setStatusCode(0));
+        }
+        return sendAsync(() -> AsyncHttpClient.sendAsync(delegate, req), HttpResponse::getStatusCode);
+    }
+
+    @Override
+    public CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req) {
+        if (!tryAcquire()) {
+            return CompletableFuture.completedFuture(new HttpBatchResponse().setStatusCode(0));
+        }
+        return sendAsync(() -> AsyncHttpClient.sendBatchAsync(delegate, req), HttpBatchResponse::getStatusCode);
+    }
+
+    private <R> R send(Supplier<R> request, ToIntFunction<R> statusCode) {
+        R resp;
+        try {
+            resp = request.get();
+        } catch (RuntimeException e) {
+            onFailure();
+            throw e;
+        }
+
+        onResponse(resp, statusCode);
+        return resp;
+    }
+
+    private <R> CompletableFuture<R> sendAsync(Supplier<CompletableFuture<R>> request, ToIntFunction<R> statusCode) {
+        CompletableFuture<R> future;
+        try {
+            future = request.get();
+        } catch (RuntimeException e) {
+            onFailure();
+            throw e;
+        }
+
+        return future.whenComplete((resp, error) -> {
+            if (error == null) {
+                onResponse(resp, statusCode);
+            } else {
+                onFailure();
+            }
+        });
+    }
+
+    private <R> void onResponse(R resp, ToIntFunction<R> statusCode) {
+        int status = resp == null ? 0 : statusCode.applyAsInt(resp);
+        if (status == 0 || status == 429 || status >= 500) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    /**
+     * @return true if the request can be sent, which is always when closed and only for the probe when open period is
+     *         over.
+     */
+    private boolean tryAcquire() {
+        Circuit current = circuit.get();
+        if (current.state == State.CLOSED) {
+            return true;
+        }
+
+        if (current.state == State.OPEN && System.nanoTime() - current.openedNanos >= openNanos && circuit.compareAndSet(current, Circuit.HALF_OPEN)) {
+            return true;
+        }
+
+        stats.get().circuitOpenRejection();
+        return false;
+    }
+
+    /**
+     * Closes the circuit only if this is the probe's success, so a success which completes late (sent before the circuit
+     * opened) doesn't close it during an outage. Likewise, failures in a row are counted again only while closed.
+     */
+    private void onSuccess() {
+        Circuit current = circuit.get();
+        if (current == Circuit.CLOSED) {
+            failures.set(0);
+        } else if (current == Circuit.HALF_OPEN && circuit.compareAndSet(Circuit.HALF_OPEN, Circuit.CLOSED)) {
+            failures.set(0);
+            logger.info("Google Analytics is reachable again, sending the hits");
+        }
+    }
+
+    private void onFailure() {
+        if (circuit.get() == Circuit.HALF_OPEN) {
+            open(Circuit.HALF_OPEN);
+            return;
+        }
+
+        if (failures.incrementAndGet() >= failureThreshold && open(Circuit.CLOSED)) {
+            logger.warn("Google Analytics couldn't be reached by " + failureThreshold + " requests in a row, not sending the hits for "
+                    + TimeUnit.NANOSECONDS.toMillis(openNanos) + "ms");
+        }
+    }
+
+    /**
+     * Opens the circuit only if it still is in given state, so a failure which completes late doesn't restart the open
+     * period of the circuit someone else opened.
+     */
+    private boolean open(Circuit from) {
+        return circuit.compareAndSet(from, new Circuit(State.OPEN, System.nanoTime()));
+    }
+
+    @Override
+    public boolean isBatchSupported() {
+        return delegate.isBatchSupported();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * State along with the time it opened, swapped as one so the open time is never seen without its state.
+     */
+    private static final class Circuit {
+        static final Circuit CLOSED = new Circuit(State.CLOSED, 0);
+        static final Circuit HALF_OPEN = new Circuit(State.HALF_OPEN, 0);
+
+        final State state;
+        final long openedNanos;
+
+        Circuit(State state, long openedNanos) {
+            this.state = state;
+            this.openedNanos = openedNanos;
+        }
+    }
+}
@@ -16,4 +16,15 @@ public interface Constants {
     String TYPE_CURRENCY = "currency";
 
     String TEST_TRACKING_ID = "UA-612100-12";
+
+    // Measurement Protocol limits for the batch endpoint
+    int MAX_BATCH_HITS = 20;
+    int MAX_BATCH_BYTES = 16 * 1024;
+    int MAX_HIT_BYTES = 8 * 1024;
+
+    // Hits queued for longer than this are not processed by Google Analytics
+    long MAX_QUEUE_TIME_MILLIS = 4 * 60 * 60 * 1000;
+
+    // Room taken by the qt parameter of the max queue time in the encoded hit
+    int QUEUE_TIME_BYTES = "&qt=".length() + String.valueOf(MAX_QUEUE_TIME_MILLIS).length();
 }
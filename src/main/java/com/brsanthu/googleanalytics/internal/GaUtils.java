@@ -34,6 +34,26 @@ public class GaUtils {
         return null;
     }
 
+    /**
+     * 32 bit FNV-1a hash of the chars of given value, finished with the murmur3 mixing step so that the values which
+     * only differ in the last chars spread over all the bits too. It is cheap and unlike {@link String#hashCode()} its
+     * result is not tied to the Java implementation.
+     */
+    public static int fnv1a(String value) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x01000193;
+        }
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
     public static boolean isBlank(String string) {
         return string == null || string.trim().length() == 0;
     }
@@ -10,23 +10,54 @@
  */
 package com.brsanthu.googleanalytics.internal;
 
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_BATCH_BYTES;
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_BATCH_HITS;
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_HIT_BYTES;
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_QUEUE_TIME_MILLIS;
+import static com.brsanthu.googleanalytics.internal.Constants.QUEUE_TIME_BYTES;
 import static com.brsanthu.googleanalytics.internal.GaUtils.isEmpty;
+import static com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter.CLIENT_ID;
+import static com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter.HIT_TYPE;
+import static com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter.TRACKING_ID;
+import static com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter.USER_ID;
 
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.brsanthu.googleanalytics.GoogleAnalytics;
 import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
+import com.brsanthu.googleanalytics.GoogleAnalyticsException;
 import com.brsanthu.googleanalytics.GoogleAnalyticsExecutor;
 import com.brsanthu.googleanalytics.GoogleAnalyticsStats;
+import com.brsanthu.googleanalytics.HitPriority;
+import com.brsanthu.googleanalytics.OverloadPolicy;
+import com.brsanthu.googleanalytics.ShutdownReport;
+import com.brsanthu.googleanalytics.httpclient.ApacheHttpClientImpl;
+import com.brsanthu.googleanalytics.httpclient.AsyncHttpClient;
+import com.brsanthu.googleanalytics.httpclient.BatchUrlEncodedFormEntity;
 import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
 import com.brsanthu.googleanalytics.httpclient.HttpClient;
 import com.brsanthu.googleanalytics.httpclient.HttpRequest;
 import com.brsanthu.googleanalytics.httpclient.HttpResponse;
@@ -50,8 +81,9 @@ import com.brsanthu.googleanalytics.request.TransactionHit;
  * Clients needs to instantiate this object with {@link GoogleAnalyticsConfig} and {@link DefaultRequest}. Configuration
  * contains sensible defaults so one could just initialize using one of the convenience constructors.
  *
- * This object is ThreadSafe and it is intended that clients create one instance of this for each GA Tracker Id and
- * reuse each time an event needs to be posted.
+ * This object is ThreadSafe and it is intended that clients create one instance of this and reuse each time an event
+ * needs to be posted. To post to many GA Tracker Ids, use {@link #tenant(String)} views of the same instance rather
+ * than creating one instance for each, so they share the threads, http connections and batches.
  *
  * This object contains resources which needs to be shutdown/disposed. So {@link #close()} method is called to release
  * all resources. Once close method is called, this instance cannot be reused so create new instance if required.
@@ -62,15 +94,225 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
     protected final GoogleAnalyticsConfig config;
     protected final DefaultRequest defaultRequest;
     protected final HttpClient httpClient;
+    // Configured http client with the retry and circuit breaker layers on top, which the hits are sent through
+    protected final HttpClient transport;
     protected final ExecutorService executor;
-    protected GoogleAnalyticsStatsImpl stats = new GoogleAnalyticsStatsImpl();
-    protected List<HttpRequest> currentBatch = new ArrayList<>();
+    protected GoogleAnalyticsStatsImpl stats = createStats();
+    protected final PriorityLaneQueue<HttpRequest> batchQueue;
+    protected final ScheduledExecutorService batchScheduler;
+    protected final AdaptiveBatchController batchController;
+    protected final BatchSender batchSender;
+    protected final HitPipeline hitPipeline;
+    protected final QuotaGovernor quotaGovernor;
+    protected final HitSpool spool;
+    protected final BufferBudget bufferBudget;
+    protected final MemoryPressureGuard memoryGuard;
+    private final Thread spoolReplayThread;
+    private final Thread shutdownHook;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // Only the thread which sets this flag drains the batch queue, which keeps the queue single consumer
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean lingerFlushScheduled = new AtomicBoolean();
+
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    // Encoded size of the hits in batch queue, including the separators used in the batch payload
+    private final LongAdder batchQueueBytes = new LongAdder();
 
     public GoogleAnalyticsImpl(GoogleAnalyticsConfig config, DefaultRequest defaultRequest, HttpClient httpClient, ExecutorService executor) {
         this.config = config;
         this.defaultRequest = defaultRequest;
         this.httpClient = httpClient;
+        this.transport = createTransport();
         this.executor = executor;
+        this.bufferBudget = createBufferBudget();
+        this.batchQueue = createBatchQueue();
+        this.batchScheduler = createBatchScheduler();
+        this.batchController = createBatchController();
+        this.batchSender = createBatchSender();
+        this.hitPipeline = createHitPipeline();
+        this.quotaGovernor = createQuotaGovernor();
+        this.spool = createSpool();
+        this.memoryGuard = createMemoryPressureGuard();
+        this.spoolReplayThread = startSpoolReplay();
+        this.shutdownHook = createShutdownHook();
+    }
+
+    protected HttpClient createTransport() {
+        HttpClient transport = httpClient;
+
+        if (config.getMaxRetries() > 0) {
+            transport = new RetryingHttpClient(transport, config, () -> stats);
+        }
+
+        // Outside of the retries, so a request counts as failed only when its retries are used up too
+        if (config.isCircuitBreakerEnabled()) {
+            transport = new CircuitBreakerHttpClient(transport, config, () -> stats);
+        }
+
+        return transport;
+    }
+
+    protected PriorityLaneQueue<HttpRequest> createBatchQueue() {
+        return new PriorityLaneQueue<>(this::createBatchLane, config::getLaneWeight);
+    }
+
+    protected BufferBudget createBufferBudget() {
+        return new BufferBudget(config.getMaxBufferedBytes());
+    }
+
+    protected MemoryPressureGuard createMemoryPressureGuard() {
+        if (config.getMemoryPressureThreshold() <= 0) {
+            return null;
+        }
+
+        return new MemoryPressureGuard(config.getMemoryPressureThreshold(), this::onMemoryPressure, bufferBudget::restore);
+    }
+
+    protected MpscQueue<HttpRequest> createBatchLane(HitPriority priority) {
+        int queueSize = config.getLaneQueueSize(priority);
+
+        if (config.getOffHeapLaneBytes() > 0) {
+            return new OffHeapHitQueue(config.getUrl(), config.getOffHeapLaneBytes(), queueSize);
+        }
+
+        if (config.getBatchQueueStripes() > 1) {
+            return new StripedMpscQueue<>(config.getBatchQueueStripes(), queueSize);
+        }
+
+        return new MpscRingBuffer<>(queueSize);
+    }
+
+    protected ScheduledExecutorService createBatchScheduler() {
+        if (!config.isBatchingEnabled() || config.getMaxBatchDelayMillis() <= 0) {
+            return null;
+        }
+
+        return Executors.newSingleThreadScheduledExecutor(createThreadFactory("batch"));
+    }
+
+    protected AdaptiveBatchController createBatchController() {
+        if (!config.isBatchingEnabled() || !config.isAdaptiveBatchingEnabled()) {
+            return null;
+        }
+
+        return new AdaptiveBatchController(getMaxBatchSize(), config.getMaxBatchDelayMillis());
+    }
+
+    protected BatchSender createBatchSender() {
+        if (!config.isBatchingEnabled()) {
+            return null;
+        }
+
+        int maxInFlightBatches = Math.max(config.getMaxInFlightBatches(), 1);
+        // Bundled clients (the async one being the only bundled AsyncHttpClient) pool maxHttpConnectionsPerRoute connections
+        if ((httpClient instanceof ApacheHttpClientImpl || httpClient instanceof AsyncHttpClient)
+                && maxInFlightBatches > config.getMaxHttpConnectionsPerRoute()) {
+            logger.warn("maxInFlightBatches " + maxInFlightBatches + " is more than maxHttpConnectionsPerRoute "
+                    + config.getMaxHttpConnectionsPerRoute() + ", so some of the batches will wait for a connection");
+        }
+
+        if (httpClient instanceof AsyncHttpClient && transport instanceof AsyncHttpClient) {
+            // Single sender thread keeps maxInFlightBatches batches on the wire, without a thread waiting for each
+            return BatchSender.async(config.getBatchQueueSize() / getMaxBatchSize(), maxInFlightBatches, createThreadFactory("sender"),
+                    this::sendBufferedBatchAsync);
+        }
+
+        return new BatchSender(config.getBatchQueueSize() / getMaxBatchSize(), maxInFlightBatches, createThreadFactory("sender"),
+                this::sendBufferedBatch);
+    }
+
+    protected HitPipeline createHitPipeline() {
+        if (!config.isAsyncPipelineEnabled()) {
+            return null;
+        }
+
+        if (!config.isBatchingEnabled()) {
+            logger.warn("Async pipeline needs batching to be enabled, so asynchronous hits will use the executor");
+            return null;
+        }
+
+        return new HitPipeline(config.getAsyncPipelineSize(), createThreadFactory("encoder"), this::encodeInPipeline);
+    }
+
+    protected QuotaGovernor createQuotaGovernor() {
+        QuotaGovernor governor = new QuotaGovernor(config.getQuotaBuckets(), config.getPropertyHitsPerSecond(), config.getPropertyHitBurst(),
+                config.getClientHitsPerSecond(), config.getClientHitBurst());
+
+        return governor.isEnabled() ? governor : null;
+    }
+
+    protected HitSpool createSpool() {
+        if (config.getSpoolDirectory() == null) {
+            return null;
+        }
+
+        if (!config.isBatchingEnabled()) {
+            logger.warn("Spool needs batching to be enabled, so hits will not be spooled");
+            return null;
+        }
+
+        try {
+            return new HitSpool(Paths.get(config.getSpoolDirectory()), config.getSpoolSegmentBytes(), config.getSpoolMaxBytes());
+        } catch (Exception e) {
+            logger.warn("Couldn't open the Google Analytics spool in " + config.getSpoolDirectory() + ", hits will not be spooled", e);
+            return null;
+        }
+    }
+
+    /**
+     * Queues the hits left in the spool by the previous instance, in the background as there could be more of them
+     * than the batch queue holds.
+     */
+    private Thread startSpoolReplay() {
+        if (spool == null) {
+            return null;
+        }
+
+        Thread thread = createThreadFactory("spool").newThread(() -> spool.replay(config.getUrl(), this::replaySpooled));
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Queues the replayed hit. Its queue time is always set from the stored hit time, even if queue time is not enabled,
+     * as it is sent well after it happened.
+     */
+    private boolean replaySpooled(HttpRequest httpReq) {
+        HitPriority priority = config.getHitPriority(httpReq.getBodyParams().get(HIT_TYPE.getParameterName()));
+        while (!offerBatch(priority, httpReq)) {
+            if (closed.get() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            // Waits for the sender to make room rather than dropping the hits
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        scheduleLingerFlush();
+        submitBatch(false);
+        return !closed.get();
+    }
+
+    protected Thread createShutdownHook() {
+        if (!config.isShutdownHookEnabled()) {
+            return null;
+        }
+
+        Thread hook = createThreadFactory("shutdown").newThread(() -> {
+            ShutdownReport report = close(Duration.ofMillis(config.getShutdownTimeoutMillis()));
+            logger.info("Google Analytics closed at JVM shutdown: " + report);
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    /**
+     * Creates the thread factory for the internal threads of given stage, so they can be told apart from the executor
+     * threads which use the configured thread name format as is.
+     */
+    protected ThreadFactory createThreadFactory(String stage) {
+        return new GoogleAnalyticsThreadFactory(config.getThreadNameFormat().replace("{0}", stage + "-{0}"));
     }
 
     @Override
@@ -78,96 +320,1253 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
         return config;
     }
 
-    public DefaultRequest getDefaultRequest() {
-        return defaultRequest;
+    public DefaultRequest getDefaultRequest() {
+        return defaultRequest;
+    }
+
+    @Override
+    public Future<GoogleAnalyticsResponse> postAsync(GoogleAnalyticsRequest<?> request) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+
+        if (rejectIfClosed(request)) {
+            CompletableFuture<GoogleAnalyticsResponse> rejected = new CompletableFuture<>();
+            rejected.cancel(false);
+            return rejected;
+        }
+
+        if (isSampledOut(request)) {
+            return CompletableFuture.completedFuture(new GoogleAnalyticsResponse());
+        }
+
+        if (isShedForMemory(request)) {
+            CompletableFuture<GoogleAnalyticsResponse> rejected = new CompletableFuture<>();
+            rejected.cancel(false);
+            return rejected;
+        }
+
+        long enqueuedNanos = System.nanoTime();
+        if (hitPipeline != null) {
+            CompletableFuture<GoogleAnalyticsResponse> completion = new CompletableFuture<>();
+            if (!publishPipelined(request, enqueuedNanos, completion)) {
+                completion.cancel(false);
+            }
+            return completion;
+        }
+
+        HitTask<GoogleAnalyticsResponse> task = new HitTask<>(getPriority(request), () -> postAccepted(request, enqueuedNanos));
+        submitAsync(task, request);
+        return task;
+    }
+
+    private HitPriority getPriority(GoogleAnalyticsRequest<?> request) {
+        return config.getHitPriority(request.hitType());
+    }
+
+    /**
+     * Decides whether the hit is sent as per the sampling rate of its type, by the hash of its client id. Done before
+     * anything else, so sampled out hits cost next to nothing. Sampled in hits get the sampling weight metric, if
+     * configured.
+     */
+    protected boolean isSampledOut(GoogleAnalyticsRequest<?> request) {
+        double rate = config.getSamplingRate(request.hitType());
+        if (rate >= 1) {
+            return false;
+        }
+
+        String clientId = isEmpty(request.clientId()) ? defaultRequest.clientId() : request.clientId();
+        double bucket = clientId == null ? 0 : (GaUtils.fnv1a(clientId) & 0xFFFFFFFFL) / (double) (1L << 32);
+
+        if (bucket < rate) {
+            if (config.getSamplingWeightMetricIndex() > 0) {
+                request.customMetric(config.getSamplingWeightMetricIndex(), String.valueOf(Math.round(1 / rate)));
+            }
+            return false;
+        }
+
+        stats.sampledOutHit();
+        return true;
+    }
+
+    /**
+     * Counts the hit as dropped if this instance is closed. Hits accepted before close are still sent while closing.
+     */
+    private boolean rejectIfClosed(GoogleAnalyticsRequest<?> request) {
+        if (!closed.get()) {
+            return false;
+        }
+
+        stats.droppedHit();
+        logger.debug("Google Analytics is closed, dropping the hit " + request);
+        return true;
+    }
+
+    /**
+     * Drops the hit while the heap is under pressure, if its priority is at or below what is shed. Guard is asked
+     * first, as asking is what keeps it polling the heap.
+     */
+    private boolean isShedForMemory(GoogleAnalyticsRequest<?> request) {
+        if (memoryGuard == null || !memoryGuard.isUnderPressure() || getPriority(request).compareTo(getMemoryShedPriority()) < 0) {
+            return false;
+        }
+
+        stats.memoryPressureShedHit();
+        stats.droppedHit();
+        return true;
+    }
+
+    /**
+     * Priority of the hits shed under memory pressure, along with the ones below it. That is low priority, unless no hit
+     * type is in the low lane, in which case normal priority hits are shed so there is something to shed.
+     */
+    private HitPriority getMemoryShedPriority() {
+        return config.isHitPriorityAssigned(HitPriority.LOW) ? HitPriority.LOW : HitPriority.NORMAL;
+    }
+
+    /**
+     * Called once the heap goes under pressure. Lowers the buffered bytes budget and frees what the shed priority hits
+     * already hold, then hands off the queued hits to the sender without waiting for the batches to fill up.
+     */
+    protected void onMemoryPressure() {
+        bufferBudget.shrink(config.getMemoryPressureBufferRatio());
+        HitPriority shedPriority = getMemoryShedPriority();
+
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+        if (queue != null) {
+            for (Runnable queued : queue) {
+                if (HitTask.priorityOf(queued).compareTo(shedPriority) >= 0 && queue.remove(queued)) {
+                    stats.memoryPressureShedHit();
+                    dropAsync(queued);
+                }
+            }
+        }
+
+        if (batchSender != null) {
+            while (!draining.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+
+            List<HttpRequest> shed = new ArrayList<>();
+            try {
+                HttpRequest httpReq;
+                while ((httpReq = batchQueue.pollLowest(shedPriority)) != null) {
+                    shed.add(httpReq);
+                }
+            } finally {
+                draining.set(false);
+            }
+
+            for (HttpRequest httpReq : shed) {
+                int hitBytes = batchBytes(httpReq);
+                batchQueueBytes.add(-hitBytes);
+                bufferBudget.release(hitBytes);
+                stats.memoryPressureShedHit();
+                stats.droppedHit();
+                acknowledgeSpooled(httpReq);
+                TrackedHttpRequest.failed(httpReq, "Google Analytics hit is dropped as heap is under pressure", null);
+            }
+
+            drainBatchesIfIdle();
+        }
+    }
+
+    /**
+     * Sends the hit asynchronously without building any response for it. With batching, the hit is just encoded and
+     * queued in the calling thread (or published to the async pipeline, if enabled), otherwise it is posted by the
+     * executor.
+     */
+    @Override
+    public void fire(GoogleAnalyticsRequest<?> request) {
+        if (!config.isEnabled() || rejectIfClosed(request) || isSampledOut(request) || isShedForMemory(request)) {
+            return;
+        }
+
+        long enqueuedNanos = System.nanoTime();
+        if (hitPipeline != null) {
+            publishPipelined(request, enqueuedNanos);
+
+        } else if (config.isBatchingEnabled()) {
+            encodePipelined(request, enqueuedNanos);
+
+        } else {
+            submitAsync(new HitTask<>(getPriority(request), () -> fireSingle(request, enqueuedNanos)), request);
+        }
+    }
+
+    private void fireSingle(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
+        try {
+            HttpRequest httpReq = createHttpRequest(gaReq, enqueuedNanos);
+            if (isOverQuota(httpReq) || isExpired(httpReq)) {
+                return;
+            }
+
+            HttpResponse resp = transport.post(httpReq);
+            stats.sentHits(1);
+            if (resp != null && isSuccess(resp.getStatusCode())) {
+                stats.deliveredHits(1);
+            }
+
+            if (config.isGatherStats()) {
+                gatherStats(gaReq);
+            }
+        } catch (Exception e) {
+            logger.warn("Exception while sending the Google Analytics tracker request " + gaReq, e);
+        }
+    }
+
+    /**
+     * Posts the hit and returns the future which completes once the hit is accepted by Google Analytics. With batching,
+     * that is when the batch containing the hit is acknowledged. Future completes exceptionally if the hit is dropped
+     * (overload, full queue, oversized hit, closed instance) or cannot be delivered.
+     */
+    @Override
+    public CompletableFuture<GoogleAnalyticsResponse> postCompletable(GoogleAnalyticsRequest<?> request) {
+        if (!config.isEnabled()) {
+            return CompletableFuture.completedFuture(new GoogleAnalyticsResponse());
+        }
+
+        if (rejectIfClosed(request)) {
+            CompletableFuture<GoogleAnalyticsResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new GoogleAnalyticsException("Google Analytics is closed"));
+            return rejected;
+        }
+
+        if (isSampledOut(request)) {
+            return CompletableFuture.completedFuture(new GoogleAnalyticsResponse());
+        }
+
+        if (isShedForMemory(request)) {
+            CompletableFuture<GoogleAnalyticsResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new GoogleAnalyticsException("Google Analytics hit is dropped as heap is under pressure"));
+            return rejected;
+        }
+
+        long enqueuedNanos = System.nanoTime();
+        if (config.isBatchingEnabled()) {
+            TrackedHttpRequest httpReq = new TrackedHttpRequest(config.getUrl());
+            try {
+                enqueueBatch(request, createHttpRequest(request, httpReq, enqueuedNanos));
+            } catch (Exception e) {
+                httpReq.failed("Exception while sending the Google Analytics tracker request " + request, e);
+            }
+            return httpReq.getCompletion();
+        }
+
+        CompletableFuture<GoogleAnalyticsResponse> completion = new CompletableFuture<>();
+        submitAsync(new HitTask<Void>(getPriority(request), () -> postSingle(request, enqueuedNanos, completion)) {
+            @Override
+            protected void done() {
+                super.done();
+                if (isCancelled()) {
+                    completion.completeExceptionally(new GoogleAnalyticsException("Google Analytics hit is dropped as executor is overloaded"));
+                }
+            }
+        }, request);
+        return completion;
+    }
+
+    private void postSingle(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion) {
+        try {
+            GoogleAnalyticsResponse response = postSingle(gaReq, enqueuedNanos);
+            if (isSuccess(response.getStatusCode())) {
+                completion.complete(response);
+            } else {
+                completion.completeExceptionally(new GoogleAnalyticsException("Google Analytics responded with status " + response.getStatusCode()));
+            }
+        } catch (Exception e) {
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    protected void publishPipelined(GoogleAnalyticsRequest<?> request, long enqueuedNanos) {
+        publishPipelined(request, enqueuedNanos, null);
+    }
+
+    /**
+     * Publishes the hit to the pipeline and applies the {@link OverloadPolicy} if all slots are in use. As the slots
+     * are taken out only by the encoder thread, {@link OverloadPolicy#DROP_OLDEST} drops the new hit instead. Waiting
+     * for a slot and posting in the calling thread both happen here, in the posting thread, never in the encoder.
+     *
+     * @return false if the hit is dropped.
+     */
+    private boolean publishPipelined(GoogleAnalyticsRequest<?> request, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion) {
+        if (hitPipeline.publish(request, enqueuedNanos, completion)) {
+            return true;
+        }
+
+        OverloadPolicy policy = getOverloadPolicy(getPriority(request));
+        switch (policy) {
+            case CALLER_RUNS:
+                stats.overloadCallerRunsHit();
+                encodePipelined(request, enqueuedNanos, completion, true);
+                return true;
+
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getOverloadBlockTimeoutMillis());
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                    if (hitPipeline.publish(request, enqueuedNanos, completion)) {
+                        return true;
+                    }
+                }
+                stats.overloadBlockTimeoutHit();
+                break;
+
+            case PROBABILISTIC:
+                stats.overloadShedHit();
+                break;
+
+            default:
+                stats.overloadDroppedNewestHit();
+                break;
+        }
+
+        stats.droppedHit();
+        return false;
+    }
+
+    /**
+     * Encode stage of the async pipeline, which runs in the pipeline's encoder thread. Budget overload is handled
+     * without blocking (see {@link #enqueueBatch(GoogleAnalyticsRequest, HttpRequest, boolean)}), as one slow hit would
+     * hold up all the others.
+     */
+    private void encodeInPipeline(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion) {
+        encodePipelined(gaReq, enqueuedNanos, completion, false);
+    }
+
+    /**
+     * Encodes the hit in the caller's thread for {@link #fire(GoogleAnalyticsRequest)}. Encoded hit is queued for the
+     * batch sender stage, without building the response which nobody would look at.
+     */
+    protected void encodePipelined(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
+        encodePipelined(gaReq, enqueuedNanos, null, true);
+    }
+
+    private void encodePipelined(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion,
+            boolean mayBlock) {
+        GoogleAnalyticsResponse response = new GoogleAnalyticsResponse();
+        if (!config.isEnabled()) {
+            complete(completion, response);
+            return;
+        }
+
+        try {
+            HttpRequest httpReq = createHttpRequest(gaReq, enqueuedNanos);
+            if (completion != null) {
+                response.setRequestParams(httpReq.getBodyParams());
+            }
+            enqueueBatch(gaReq, httpReq, mayBlock);
+        } catch (Exception e) {
+            logger.warn("Exception while sending the Google Analytics tracker request " + gaReq, e);
+        }
+        complete(completion, response);
+    }
+
+    private static void complete(CompletableFuture<GoogleAnalyticsResponse> completion, GoogleAnalyticsResponse response) {
+        if (completion != null) {
+            completion.complete(response);
+        }
+    }
+
+    /**
+     * Charges the task with the size of its hit in the buffered bytes budget and hands it off to the executor. If the
+     * budget is used up, the configured {@link OverloadPolicy} is applied as if the executor was full.
+     */
+    private void submitAsync(HitTask<?> task, GoogleAnalyticsRequest<?> request) {
+        if (bufferBudget.isLimited()) {
+            long bytes = estimateBytes(request);
+            if (!task.charge(bufferBudget, bytes)) {
+                if (executor.isShutdown()) {
+                    dropAsync(task);
+                } else {
+                    handleOverload(task, bytes);
+                }
+                return;
+            }
+        }
+
+        submitAsync(task);
+    }
+
+    /**
+     * Hands off the task to the executor and applies the configured {@link OverloadPolicy} if executor cannot take it.
+     * Dropped tasks are cancelled if they are futures, so anyone waiting on them is not blocked for ever.
+     */
+    protected void submitAsync(Runnable task) {
+        OverloadPolicy policy = getOverloadPolicy(HitTask.priorityOf(task));
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+
+        if (policy == OverloadPolicy.PROBABILISTIC && queue != null && isShed(queue)) {
+            stats.overloadShedHit();
+            dropAsync(task);
+            return;
+        }
+
+        if (tryExecute(task)) {
+            return;
+        }
+
+        if (executor.isShutdown()) {
+            dropAsync(task);
+            return;
+        }
+
+        handleOverload(task, 0);
+    }
+
+    /**
+     * Applies the configured {@link OverloadPolicy} to the task which the executor couldn't take, or which doesn't fit
+     * in the buffered bytes budget if the bytes are given.
+     */
+    private void handleOverload(Runnable task, long overBudgetBytes) {
+        OverloadPolicy policy = getOverloadPolicy(HitTask.priorityOf(task));
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+
+        switch (policy) {
+            case CALLER_RUNS:
+                stats.overloadCallerRunsHit();
+                task.run();
+                return;
+
+            case DROP_OLDEST:
+                if (queue != null) {
+                    // Makes room in the queue, and in the budget if that is what is used up
+                    do {
+                        Runnable oldest = pollOldestSheddable(queue);
+                        if (oldest == null) {
+                            break;
+                        }
+                        stats.overloadDroppedOldestHit();
+                        dropAsync(oldest);
+                    } while (!charge(task, overBudgetBytes));
+
+                    if (charge(task, overBudgetBytes) && (tryExecute(task) || queue.offer(task))) {
+                        return;
+                    }
+                }
+                break;
+
+            case BLOCK:
+                if (overBudgetBytes > 0) {
+                    if (!awaitCharge(task, overBudgetBytes)) {
+                        stats.overloadBlockTimeoutHit();
+                        dropAsync(task);
+                        return;
+                    }
+
+                    if (tryExecute(task)) {
+                        return;
+                    }
+                }
+
+                if (executor instanceof BoundedExecutorService) {
+                    try {
+                        if (((BoundedExecutorService) executor).tryExecute(task, config.getOverloadBlockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    stats.overloadBlockTimeoutHit();
+                    dropAsync(task);
+                    return;
+                }
+
+                if (queue != null) {
+                    try {
+                        if (queue.offer(task, config.getOverloadBlockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    stats.overloadBlockTimeoutHit();
+                    dropAsync(task);
+                    return;
+                }
+                break;
+
+            case PROBABILISTIC:
+                stats.overloadShedHit();
+                dropAsync(task);
+                return;
+
+            default:
+                break;
+        }
+
+        stats.overloadDroppedNewestHit();
+        dropAsync(task);
+    }
+
+    private BlockingQueue<Runnable> getExecutorQueue() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue();
+        }
+        return executor instanceof BoundedExecutorService ? ((BoundedExecutorService) executor).getQueue() : null;
+    }
+
+    private boolean tryExecute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Executor is saturated, so the policy decides
+            return false;
+        }
+    }
+
+    private boolean charge(Runnable task, long bytes) {
+        return bytes == 0 || ((HitTask<?>) task).charge(bufferBudget, bytes);
+    }
+
+    /**
+     * Waits up to the block timeout for the budget to have room for the task.
+     */
+    private boolean awaitCharge(Runnable task, long bytes) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getOverloadBlockTimeoutMillis());
+        while (!charge(task, bytes)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        return true;
+    }
+
+    /**
+     * Size of the params of the hit and the default request, which stands in for the encoded size of the hits waiting
+     * for the executor, as they are encoded only when they are sent.
+     */
+    private long estimateBytes(GoogleAnalyticsRequest<?> request) {
+        return paramBytes(request) + paramBytes(defaultRequest);
+    }
+
+    private static long paramBytes(GoogleAnalyticsRequest<?> request) {
+        long bytes = 0;
+        for (Map.Entry<GoogleAnalyticsParameter, String> entry : request.getParameters().entrySet()) {
+            bytes += entry.getKey().getParameterName().length() + length(entry.getValue()) + 2;
+        }
+        for (Map.Entry<String, String> entry : request.customDimensions().entrySet()) {
+            bytes += entry.getKey().length() + length(entry.getValue()) + 2;
+        }
+        for (Map.Entry<String, String> entry : request.custommMetrics().entrySet()) {
+            bytes += entry.getKey().length() + length(entry.getValue()) + 2;
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * High priority hits are never shed, so they are posted in the calling thread whatever the policy is.
+     */
+    private OverloadPolicy getOverloadPolicy(HitPriority priority) {
+        if (priority == HitPriority.HIGH) {
+            return OverloadPolicy.CALLER_RUNS;
+        }
+
+        return GaUtils.firstNotNull(config.getOverloadPolicy(), OverloadPolicy.CALLER_RUNS);
+    }
+
+    /**
+     * Removes the oldest queued task of the lowest priority, leaving the high priority ones alone.
+     */
+    private static Runnable pollOldestSheddable(BlockingQueue<Runnable> queue) {
+        for (HitPriority priority : new HitPriority[] { HitPriority.LOW, HitPriority.NORMAL }) {
+            for (Runnable queued : queue) {
+                if (HitTask.priorityOf(queued) == priority && queue.remove(queued)) {
+                    return queued;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isShed(BlockingQueue<Runnable> queue) {
+        int size = queue.size();
+        double capacity = size + queue.remainingCapacity();
+        return isShed(capacity == 0 ? 1 : size / capacity);
+    }
+
+    /**
+     * Sheds with probability growing linearly from 0 at the configured threshold to 1 when the queue (or budget) is
+     * full.
+     */
+    private boolean isShed(double fill) {
+        double threshold = Math.min(Math.max(config.getOverloadShedThreshold(), 0), 1);
+
+        if (fill <= threshold) {
+            return false;
+        }
+
+        double probability = threshold >= 1 ? 1 : (fill - threshold) / (1 - threshold);
+        return ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+    private void dropAsync(Runnable task) {
+        stats.droppedHit();
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    @Override
+    public GoogleAnalyticsResponse post(GoogleAnalyticsRequest<?> gaReq) {
+        if (config.isEnabled() && (rejectIfClosed(gaReq) || isSampledOut(gaReq) || isShedForMemory(gaReq))) {
+            return new GoogleAnalyticsResponse();
+        }
+
+        return postAccepted(gaReq, System.nanoTime());
+    }
+
+    private GoogleAnalyticsResponse postAccepted(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
+        GoogleAnalyticsResponse response = new GoogleAnalyticsResponse();
+        if (!config.isEnabled()) {
+            return response;
+        }
+
+        try {
+            if (config.isBatchingEnabled()) {
+                response = postBatch(gaReq, enqueuedNanos);
+            } else {
+                response = postSingle(gaReq, enqueuedNanos);
+            }
+
+        } catch (Exception e) {
+            logger.warn("Exception while sending the Google Analytics tracker request " + gaReq, e);
+        }
+
+        return response;
+    }
+
+    protected GoogleAnalyticsResponse postBatch(GoogleAnalyticsRequest<?> gaReq) {
+        return postBatch(gaReq, System.nanoTime());
+    }
+
+    protected GoogleAnalyticsResponse postBatch(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
+        GoogleAnalyticsResponse resp = new GoogleAnalyticsResponse();
+        HttpRequest httpReq = createHttpRequest(gaReq, enqueuedNanos);
+        resp.setRequestParams(httpReq.getBodyParams());
+
+        enqueueBatch(gaReq, httpReq);
+
+        return resp;
+    }
+
+    protected void enqueueBatch(GoogleAnalyticsRequest<?> gaReq, HttpRequest httpReq) {
+        enqueueBatch(gaReq, httpReq, true);
+    }
+
+    /**
+     * Adds the hit to the batch queue and hands off the batches to the sender if the queue has enough hits for them.
+     *
+     * @param mayBlock false if the calling thread must not wait for budget nor post the hit itself, in which case
+     *        {@link OverloadPolicy#CALLER_RUNS} and {@link OverloadPolicy#BLOCK} drop the oldest hits instead.
+     */
+    private void enqueueBatch(GoogleAnalyticsRequest<?> gaReq, HttpRequest httpReq, boolean mayBlock) {
+        if (config.isGatherStats()) {
+            gatherStats(gaReq);
+        }
+
+        if (hitBytes(httpReq) > MAX_HIT_BYTES) {
+            TrackedHttpRequest.failed(httpReq, "Google Analytics hit is larger than " + MAX_HIT_BYTES + " bytes", null);
+            handleOversizedHit(gaReq, httpReq);
+            return;
+        }
+
+        if (isOverQuota(httpReq)) {
+            return;
+        }
+
+        HitPriority priority = getPriority(gaReq);
+        int hitBytes = batchBytes(httpReq);
+        if (!reserveBuffered(priority, httpReq, hitBytes, mayBlock)) {
+            return;
+        }
+
+        // Spooled hits which are dropped from here on are sent by the next instance
+        if (spool != null) {
+            httpReq.setSpoolPosition(spool.append(httpReq));
+        }
+
+        if (!offerReserved(priority, httpReq, hitBytes)) {
+            bufferBudget.release(hitBytes);
+            stats.droppedHit();
+            TrackedHttpRequest.failed(httpReq, "Google Analytics batch queue is full", null);
+            logger.warn("Google Analytics batch queue of " + priority + " priority hits is full, dropping the hit " + gaReq);
+            return;
+        }
+
+        scheduleLingerFlush();
+
+        // If the batch size has reached the configured max,
+        // then send the batch to google then clear the batch to start a new batch
+        submitBatch(false);
+    }
+
+    /**
+     * Adds the hit to the lane of given priority, if it fits in the buffered bytes budget.
+     *
+     * @return false if the lane is full or the budget is used up.
+     */
+    private boolean offerBatch(HitPriority priority, HttpRequest httpReq) {
+        int hitBytes = batchBytes(httpReq);
+        if (!bufferBudget.tryReserve(hitBytes)) {
+            return false;
+        }
+
+        if (!offerReserved(priority, httpReq, hitBytes)) {
+            bufferBudget.release(hitBytes);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reserves the bytes of the hit in the buffered bytes budget, and applies the configured {@link OverloadPolicy} if
+     * the budget is used up.
+     *
+     * @return false if the hit is not to be queued, as it is dropped or sent by the calling thread.
+     */
+    private boolean reserveBuffered(HitPriority priority, HttpRequest httpReq, int hitBytes, boolean mayBlock) {
+        OverloadPolicy policy = getOverloadPolicy(priority);
+        if (!mayBlock && (policy == OverloadPolicy.CALLER_RUNS || policy == OverloadPolicy.BLOCK)) {
+            policy = OverloadPolicy.DROP_OLDEST;
+        }
+
+        if (policy == OverloadPolicy.PROBABILISTIC && bufferBudget.isLimited() && isShed(bufferBudget.getFill())) {
+            stats.overloadShedHit();
+            dropOverloaded(httpReq);
+            return false;
+        }
+
+        if (bufferBudget.tryReserve(hitBytes)) {
+            return true;
+        }
+
+        switch (policy) {
+            case CALLER_RUNS:
+                stats.overloadCallerRunsHit();
+                sendUnbuffered(httpReq);
+                return false;
+
+            case DROP_OLDEST:
+                while (evictOldestBatched()) {
+                    if (bufferBudget.tryReserve(hitBytes)) {
+                        return true;
+                    }
+                }
+                break;
+
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getOverloadBlockTimeoutMillis());
+                while (System.nanoTime() - deadline < 0) {
+                    // Partial batches are handed off too, as the budget may be used up before a batch is full
+                    drainBatchesIfIdle();
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                    if (bufferBudget.tryReserve(hitBytes)) {
+                        return true;
+                    }
+                }
+                stats.overloadBlockTimeoutHit();
+                dropOverloaded(httpReq);
+                return false;
+
+            case PROBABILISTIC:
+                stats.overloadShedHit();
+                dropOverloaded(httpReq);
+                return false;
+
+            default:
+                break;
+        }
+
+        stats.overloadDroppedNewestHit();
+        dropOverloaded(httpReq);
+        return false;
+    }
+
+    private void dropOverloaded(HttpRequest httpReq) {
+        stats.droppedHit();
+        TrackedHttpRequest.failed(httpReq, "Google Analytics hit is dropped as buffered hits are over " + config.getMaxBufferedBytes() + " bytes",
+                null);
+    }
+
+    /**
+     * Posts the hit in the calling thread, without buffering it.
+     */
+    private void sendUnbuffered(HttpRequest httpReq) {
+        if (isExpired(httpReq)) {
+            return;
+        }
+
+        HttpResponse resp;
+        try {
+            resp = transport.post(httpReq);
+        } catch (RuntimeException e) {
+            TrackedHttpRequest.failed(httpReq, "Exception while sending the Google Analytics hit", e);
+            throw e;
+        }
+
+        stats.sentHits(1);
+        int statusCode = resp == null ? 0 : resp.getStatusCode();
+        if (isSuccess(statusCode)) {
+            stats.deliveredHits(1);
+            TrackedHttpRequest.delivered(httpReq, statusCode);
+        } else {
+            TrackedHttpRequest.failed(httpReq, "Google Analytics responded with status " + statusCode, null);
+        }
+    }
+
+    /**
+     * Drops the oldest queued hit of the lowest priority (leaving the high priority ones alone), to make room for a new
+     * hit.
+     *
+     * @return false if there is no such hit.
+     */
+    private boolean evictOldestBatched() {
+        // Waits for the turn to keep the queue single consumer
+        while (!draining.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+
+        HttpRequest oldest;
+        try {
+            oldest = batchQueue.pollLowest(HitPriority.NORMAL);
+        } finally {
+            draining.set(false);
+        }
+
+        if (oldest == null) {
+            return false;
+        }
+
+        int hitBytes = batchBytes(oldest);
+        batchQueueBytes.add(-hitBytes);
+        bufferBudget.release(hitBytes);
+        stats.overloadDroppedOldestHit();
+        stats.droppedHit();
+        acknowledgeSpooled(oldest);
+        TrackedHttpRequest.failed(oldest, "Google Analytics hit is dropped to make room for newer hits", null);
+        return true;
     }
 
-    @Override
-    public Future<GoogleAnalyticsResponse> postAsync(GoogleAnalyticsRequest<?> request) {
-        if (!config.isEnabled()) {
-            return null;
+    private void drainBatchesIfIdle() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                drainBatches(true);
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Adds the hit, whose bytes are already reserved in the budget, to the lane of given priority. If the lane is
+     * full, makes room by handing off the full batches and tries once more.
+     *
+     * @return false if the lane is still full.
+     */
+    private boolean offerReserved(HitPriority priority, HttpRequest httpReq, int hitBytes) {
+        // Counted before the hit is visible to the drainer, so drainer never takes away more than what is added
+        batchQueueBytes.add(hitBytes);
+
+        if (!batchQueue.offer(priority, httpReq)) {
+            submitBatch(false);
+
+            if (!batchQueue.offer(priority, httpReq)) {
+                batchQueueBytes.add(-hitBytes);
+                return false;
+            }
         }
 
-        return executor.submit(() -> post(request));
+        return true;
     }
 
-    @Override
-    public GoogleAnalyticsResponse post(GoogleAnalyticsRequest<?> gaReq) {
-        GoogleAnalyticsResponse response = new GoogleAnalyticsResponse();
-        if (!config.isEnabled()) {
-            return response;
+    private void submitBatch(boolean force) {
+        submitBatch(force, NO_DEADLINE);
+    }
+
+    private void submitBatch(boolean force, long deadline) {
+        while (isSubmitBatch(force) && !isPast(deadline)) {
+
+            // Only one thread drains the queue at a time. Producers which lose the race just leave their hits to the
+            // drainer, which keeps going until the queue goes below batch size. Explicit flush waits for its turn.
+            if (draining.compareAndSet(false, true)) {
+                boolean drained = false;
+                try {
+                    drained = drainBatches(force);
+                } finally {
+                    draining.set(false);
+                }
+
+                // Sender is backed up, so leave the hits in the queue. Flush waits for the sender to make room.
+                if (!drained) {
+                    if (!force) {
+                        return;
+                    }
+                    Thread.yield();
+                }
+
+                // Otherwise check again, in case hits were queued after the drainer's last check but before flag was
+                // released
+
+            } else if (force) {
+                Thread.yield();
+
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the queued hits into batches and hands them off to the sender.
+     *
+     * @return false if nothing could be handed off because sender is backed up.
+     */
+    private boolean drainBatches(boolean force) {
+        boolean drained = false;
+
+        while (isSubmitBatch(force) && batchSender.hasCapacity()) {
+            if (batchController != null) {
+                batchController.onQueueDepth(batchQueue.size());
+            }
+
+            int batchSize = getBatchSize();
+            batchQueue.startBatch(batchSize);
+            List<HttpRequest> batch = new ArrayList<>(batchSize);
+            int batchBytes = 0;
+
+            // Batch is cut at whichever of the hit count or payload size limit is reached first
+            HttpRequest httpReq = null;
+            while (batch.size() < batchSize && (httpReq = batchQueue.peek()) != null) {
+                int hitBytes = batchBytes(httpReq);
+                if (!batch.isEmpty() && batchBytes + hitBytes > MAX_BATCH_BYTES) {
+                    break;
+                }
+
+                batchQueue.poll();
+                batchQueueBytes.add(-hitBytes);
+                batchBytes += hitBytes;
+                batch.add(httpReq);
+            }
+
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            if (batchSender.submit(new HttpBatchRequest().setUrl(config.getBatchUrl()).setRequests(batch))) {
+                drained = true;
+            } else {
+                for (HttpRequest r : batch) {
+                    bufferBudget.release(batchBytes(r));
+                    stats.droppedHit();
+                    TrackedHttpRequest.failed(r, "Google Analytics batch sender is closed", null);
+                }
+                logger.warn("Google Analytics batch sender is closed, dropping a batch of " + batch.size() + " hits");
+            }
+        }
+
+        return drained;
+    }
+
+    private void sendBufferedBatch(HttpBatchRequest batch) {
+        // Hits stay in the budget while they are sent and retried
+        long bytes = batchBytes(batch);
+        try {
+            sendBatch(batch);
+        } finally {
+            bufferBudget.release(bytes);
         }
+    }
 
+    private CompletableFuture<HttpBatchResponse> sendBufferedBatchAsync(HttpBatchRequest batch) {
+        long bytes = batchBytes(batch);
+        CompletableFuture<HttpBatchResponse> future;
         try {
-            if (config.isBatchingEnabled()) {
-                response = postBatch(gaReq);
+            future = sendBatchAsync(batch);
+        } catch (RuntimeException e) {
+            bufferBudget.release(bytes);
+            throw e;
+        }
+        return future.whenComplete((resp, e) -> bufferBudget.release(bytes));
+    }
+
+    private static long batchBytes(HttpBatchRequest batch) {
+        return batch.getRequests().stream().mapToLong(GoogleAnalyticsImpl::batchBytes).sum();
+    }
+
+    /**
+     * Posts the batch, which runs in the sender threads, and completes the futures of the tracked hits in it.
+     */
+    protected void sendBatch(HttpBatchRequest batch) {
+        if (!prepareBatch(batch)) {
+            return;
+        }
+
+        HttpBatchResponse resp;
+        long start = System.nanoTime();
+        try {
+            resp = transport.postBatch(batch);
+        } catch (RuntimeException e) {
+            batchFailed(batch, start, e);
+            throw e;
+        }
+
+        batchSent(batch, start, resp);
+    }
+
+    /**
+     * Posts the batch without waiting for the response, when both the http client and the transport are
+     * {@link AsyncHttpClient}s. Futures of the tracked hits in it are completed when the returned future completes.
+     */
+    protected CompletableFuture<HttpBatchResponse> sendBatchAsync(HttpBatchRequest batch) {
+        if (!prepareBatch(batch)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long start = System.nanoTime();
+        return ((AsyncHttpClient) transport).postBatchAsync(batch).whenComplete((resp, e) -> {
+            if (e == null) {
+                batchSent(batch, start, resp);
             } else {
-                response = postSingle(gaReq);
+                batchFailed(batch, start, e);
             }
+        });
+    }
 
-        } catch (Exception e) {
-            logger.warn("Exception while sending the Google Analytics tracker request " + gaReq, e);
+    /**
+     * Removes the expired hits from the batch.
+     *
+     * @return <code>false</code> if there are no hits left to send.
+     */
+    private boolean prepareBatch(HttpBatchRequest batch) {
+        batch.getRequests().removeIf(this::isExpired);
+        if (batch.getRequests().isEmpty()) {
+            return false;
         }
 
-        return response;
+        logger.debug("Submitting a batch of " + batch.getRequests().size() + " requests to GA");
+        return true;
     }
 
-    protected GoogleAnalyticsResponse postBatch(GoogleAnalyticsRequest<?> gaReq) {
-        GoogleAnalyticsResponse resp = new GoogleAnalyticsResponse();
-        HttpRequest httpReq = createHttpRequest(gaReq);
-        resp.setRequestParams(httpReq.getBodyParams());
+    private void batchFailed(HttpBatchRequest batch, long start, Throwable e) {
+        if (batchController != null) {
+            batchController.onBatchSent(System.nanoTime() - start, TimeUnit.NANOSECONDS, false);
+        }
+        // Failed hits stay pending in the spool, so the next instance sends them (or drops them once expired)
+        for (HttpRequest httpReq : batch.getRequests()) {
+            TrackedHttpRequest.failed(httpReq, "Exception while sending the Google Analytics batch", e);
+        }
+    }
 
-        if (config.isGatherStats()) {
-            gatherStats(gaReq);
+    private void batchSent(HttpBatchRequest batch, long start, HttpBatchResponse resp) {
+        stats.sentHits(batch.getRequests().size());
+
+        int statusCode = resp == null ? 0 : resp.getStatusCode();
+        if (batchController != null) {
+            batchController.onBatchSent(System.nanoTime() - start, TimeUnit.NANOSECONDS, isSuccess(statusCode));
+        }
+        if (isSuccess(statusCode)) {
+            stats.deliveredHits(batch.getRequests().size());
         }
 
-        synchronized (currentBatch) {
-            currentBatch.add(httpReq);
+        for (HttpRequest httpReq : batch.getRequests()) {
+            if (isSuccess(statusCode)) {
+                acknowledgeSpooled(httpReq);
+                TrackedHttpRequest.delivered(httpReq, statusCode);
+            } else {
+                TrackedHttpRequest.failed(httpReq, "Google Analytics responded to the batch with status " + statusCode, null);
+            }
         }
+    }
 
-        // If the batch size has reached the configured max,
-        // then send the batch to google then clear the batch to start a new batch
-        submitBatch(false);
+    /**
+     * Charges the hit to the quotas of its tracking id and client id (or user id), and drops it if either is used up.
+     */
+    private boolean isOverQuota(HttpRequest httpReq) {
+        if (quotaGovernor == null) {
+            return false;
+        }
 
-        return resp;
+        Map<String, String> params = httpReq.getBodyParams();
+        String clientId = params.get(CLIENT_ID.getParameterName());
+        if (clientId == null) {
+            clientId = params.get(USER_ID.getParameterName());
+        }
+
+        if (quotaGovernor.tryAcquire(params.get(TRACKING_ID.getParameterName()), clientId)) {
+            return false;
+        }
+
+        stats.overQuotaHit();
+        TrackedHttpRequest.failed(httpReq, "Google Analytics hit is over the quota", null);
+        return true;
     }
 
-    private void submitBatch(boolean force) {
-        if (currentBatch.isEmpty()) {
+    private void acknowledgeSpooled(HttpRequest httpReq) {
+        if (spool != null) {
+            spool.acknowledge(httpReq.getSpoolPosition());
+        }
+    }
+
+    private static boolean isPast(long deadline) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(deadline - System.nanoTime(), 0);
+    }
+
+    private boolean isSubmitBatch(boolean force) {
+        if (force) {
+            return !batchQueue.isEmpty();
+        }
+
+        if (memoryGuard != null && memoryGuard.isUnderPressure()) {
+            return !batchQueue.isEmpty();
+        }
+
+        return batchQueue.size() >= getBatchSize() || batchQueueBytes.sum() >= MAX_BATCH_BYTES;
+    }
+
+    private int getBatchSize() {
+        int maxBatchSize = getMaxBatchSize();
+        return batchController == null ? maxBatchSize : Math.min(batchController.getBatchSize(), maxBatchSize);
+    }
+
+    private int getMaxBatchSize() {
+        return Math.max(Math.min(config.getBatchSize(), MAX_BATCH_HITS), 1);
+    }
+
+    private long getLingerMillis() {
+        return batchController == null ? config.getMaxBatchDelayMillis() : batchController.getLingerMillis();
+    }
+
+    private static int batchBytes(HttpRequest httpReq) {
+        return hitBytes(httpReq) + BatchUrlEncodedFormEntity.REQUEST_SEPARATOR.length();
+    }
+
+    /**
+     * Encoded size of the hit, including the room for the queue time which is only set when it is sent.
+     */
+    private static int hitBytes(HttpRequest httpReq) {
+        if (httpReq.hasHitTime()) {
+            return httpReq.getEncodedParams().length() + QUEUE_TIME_BYTES;
+        }
+
+        return httpReq.getEncodedBody().length();
+    }
+
+    /**
+     * Sets the queue time of the hit as of now, and drops it if it is older than what Google Analytics processes.
+     */
+    private boolean isExpired(HttpRequest httpReq) {
+        if (httpReq.updateQueueTime(System.nanoTime()) <= MAX_QUEUE_TIME_MILLIS) {
+            return false;
+        }
+
+        stats.expiredHit();
+        acknowledgeSpooled(httpReq);
+        TrackedHttpRequest.failed(httpReq, "Google Analytics hit is queued for longer than " + MAX_QUEUE_TIME_MILLIS + "ms", null);
+        return true;
+    }
+
+    /**
+     * Called for the hits which are larger than what Measurement Protocol accepts, so they would make the whole batch
+     * fail. Such hits are not batched, but counted and logged.
+     */
+    protected void handleOversizedHit(GoogleAnalyticsRequest<?> gaReq, HttpRequest httpReq) {
+        stats.oversizedHit();
+        logger.warn("Google Analytics hit is " + hitBytes(httpReq) + " bytes, which is more than the limit of " + MAX_HIT_BYTES
+                + " bytes, dropping the hit " + gaReq);
+    }
+
+    private void scheduleLingerFlush() {
+        // Plain read first, so producers don't keep writing to the flag's cache line while a flush is pending
+        if (batchScheduler == null || lingerFlushScheduled.get() || !lingerFlushScheduled.compareAndSet(false, true)) {
             return;
         }
 
-        if (isSubmitBatch(force)) {
+        try {
+            batchScheduler.schedule(this::lingerFlush, getLingerMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Scheduler is shutdown as part of close, which flushes the batch anyway
+            lingerFlushScheduled.set(false);
+            logger.debug("Couldn't schedule the batch flush", e);
+        }
+    }
 
-            // Synchronized block is to ensure only one of the writers will actually write the batch.
-            synchronized (currentBatch) {
+    private void lingerFlush() {
+        // Cleared before flushing, so hits queued during the flush schedule the next one
+        lingerFlushScheduled.set(false);
 
-                // If two threads pass the if condition and then one of them actually writes,
-                // other will do the same since they were blocked sync block. this ensures that
-                // others will not post it even if multiple threads were to wait at sync block at same time
-                // https://en.wikipedia.org/wiki/Double-checked_locking
-                if (isSubmitBatch(force)) {
-                    logger.debug("Submitting a batch of " + currentBatch.size() + " requests to GA");
-                    httpClient.postBatch(new HttpBatchRequest().setUrl(config.getBatchUrl()).setRequests(currentBatch));
-                    currentBatch.clear();
+        try {
+            // Doesn't wait for the drainer or sender, as that would hold up the scheduler thread
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    if (batchController != null) {
+                        batchController.onLingerFlush(batchQueue.size());
+                    }
+
+                    drainBatches(true);
+                } finally {
+                    draining.set(false);
                 }
             }
+
+            // Whatever couldn't be handed off gets another linger period
+            if (!batchQueue.isEmpty()) {
+                scheduleLingerFlush();
+            }
+        } catch (Exception e) {
+            logger.warn("Exception while flushing the Google Analytics batch", e);
         }
     }
 
-    private boolean isSubmitBatch(boolean force) {
-        return force || currentBatch.size() >= config.getBatchSize();
+    protected GoogleAnalyticsResponse postSingle(GoogleAnalyticsRequest<?> gaReq) {
+        return postSingle(gaReq, System.nanoTime());
     }
 
-    protected GoogleAnalyticsResponse postSingle(GoogleAnalyticsRequest<?> gaReq) {
+    protected GoogleAnalyticsResponse postSingle(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
 
-        HttpRequest httpReq = createHttpRequest(gaReq);
-        HttpResponse httpResp = httpClient.post(httpReq);
+        HttpRequest httpReq = createHttpRequest(gaReq, enqueuedNanos);
 
         GoogleAnalyticsResponse response = new GoogleAnalyticsResponse();
-        response.setStatusCode(httpResp.getStatusCode());
         response.setRequestParams(httpReq.getBodyParams());
 
+        if (isOverQuota(httpReq)) {
+            // Same status as a rate limited request, so callers don't take the hit as delivered
+            response.setStatusCode(429);
+            return response;
+        }
+
+        if (isExpired(httpReq)) {
+            // Not sent, so there is no status to report
+            response.setStatusCode(0);
+            return response;
+        }
+
+        HttpResponse httpResp = transport.post(httpReq);
+        stats.sentHits(1);
+        response.setStatusCode(httpResp.getStatusCode());
+        if (isSuccess(httpResp.getStatusCode())) {
+            stats.deliveredHits(1);
+        }
+
         if (config.isGatherStats()) {
             gatherStats(gaReq);
         }
@@ -175,8 +1574,16 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
         return response;
     }
 
-    private HttpRequest createHttpRequest(GoogleAnalyticsRequest<?> gaReq) {
-        HttpRequest httpReq = new HttpRequest(config.getUrl());
+    private HttpRequest createHttpRequest(GoogleAnalyticsRequest<?> gaReq, long enqueuedNanos) {
+        return createHttpRequest(gaReq, new HttpRequest(config.getUrl()), enqueuedNanos);
+    }
+
+    private <R extends HttpRequest> R createHttpRequest(GoogleAnalyticsRequest<?> gaReq, R httpReq, long enqueuedNanos) {
+        if (config.isQueueTimeEnabled()) {
+            // Queue time set on the hit is how long it was queued before it was posted
+            Integer queueTime = gaReq.queueTime();
+            httpReq.setHitNanos(enqueuedNanos - TimeUnit.MILLISECONDS.toNanos(queueTime == null ? 0 : queueTime));
+        }
 
         // Process the parameters
         processParameters(gaReq, httpReq);
@@ -283,21 +1690,143 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
         }
     }
 
+    /**
+     * Closes this instance, waiting up to <code>shutdownTimeoutMillis</code> for the pending hits to be sent.
+     */
     @Override
     public void close() {
-        flush();
+        ShutdownReport report = close(Duration.ofMillis(config.getShutdownTimeoutMillis()));
+        logger.debug("Google Analytics closed: " + report);
+    }
+
+    /**
+     * Stops accepting hits and sends the pending ones until the given deadline. Executor threads and batch sender
+     * threads drain their queues in parallel. Whatever is not sent by the deadline is dropped.
+     */
+    @Override
+    public ShutdownReport close(Duration timeout) {
+        if (!closed.compareAndSet(false, true)) {
+            return new ShutdownReport(0, 0, 0, 0);
+        }
+
+        removeShutdownHook();
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        GoogleAnalyticsStatsImpl closeStats = stats;
+        long sentBefore = closeStats.getSentHits();
+        long deliveredBefore = closeStats.getDeliveredHits();
+        long droppedBefore = closeStats.getDroppedHits();
+        long abandoned = 0;
+
+        if (spoolReplayThread != null) {
+            spoolReplayThread.interrupt();
+        }
+
+        // Executor goes first, as its tasks feed the pipeline and batch queue
+        abandoned += shutdownExecutor(deadline);
+
+        // Then the pipeline, as it feeds the batch queue
+        if (hitPipeline != null) {
+            dropHits(hitPipeline.close(remainingNanos(deadline), TimeUnit.NANOSECONDS));
+        }
+
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+        }
+
+        if (batchSender != null) {
+            submitBatch(true, deadline);
+            dropBatchQueue();
+
+            for (HttpBatchRequest batch : batchSender.close(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                batch.getRequests().forEach(r -> dropHit(r, "Google Analytics batch was not sent before the close deadline"));
+            }
+            abandoned += batchSender.getInFlightHits();
+        }
+
+        if (spool != null) {
+            spool.close();
+        }
 
         try {
-            executor.shutdown();
+            // Closes the wrappers along with the http client, so pending retries give up
+            transport.close();
         } catch (Exception e) {
             // ignore
         }
 
+        long delivered = closeStats.getDeliveredHits() - deliveredBefore;
+        long failed = closeStats.getSentHits() - sentBefore - delivered;
+        return new ShutdownReport(delivered, failed, closeStats.getDroppedHits() - droppedBefore, abandoned);
+    }
+
+    /**
+     * Waits for the executor to finish the queued tasks until the deadline, and drops the tasks which are still queued.
+     *
+     * @return number of tasks still running at the deadline.
+     */
+    private int shutdownExecutor(long deadline) {
         try {
-            httpClient.close();
+            executor.shutdown();
+            if (executor.awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             // ignore
         }
+
+        int running = 0;
+        if (executor instanceof ThreadPoolExecutor) {
+            running = ((ThreadPoolExecutor) executor).getActiveCount();
+        } else if (executor instanceof BoundedExecutorService) {
+            running = ((BoundedExecutorService) executor).getActiveCount();
+        }
+
+        executor.shutdownNow().forEach(this::dropAsync);
+        return running;
+    }
+
+    private void dropBatchQueue() {
+        // Linger flush may still be finishing up, so wait for the turn to keep the queue single consumer
+        while (!draining.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+
+        try {
+            HttpRequest httpReq;
+            while ((httpReq = batchQueue.poll()) != null) {
+                batchQueueBytes.add(-batchBytes(httpReq));
+                dropHit(httpReq, "Google Analytics hit was not sent before the close deadline");
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private void dropHit(HttpRequest httpReq, String reason) {
+        bufferBudget.release(batchBytes(httpReq));
+        stats.droppedHit();
+        TrackedHttpRequest.failed(httpReq, reason, null);
+    }
+
+    private void dropHits(int count) {
+        for (int i = 0; i < count; i++) {
+            stats.droppedHit();
+        }
+    }
+
+    private void removeShutdownHook() {
+        if (shutdownHook == null || Thread.currentThread() == shutdownHook) {
+            return;
+        }
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM is already shutting down
+        }
     }
 
     @Override
@@ -307,7 +1836,18 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
 
     @Override
     public void resetStats() {
-        stats = new GoogleAnalyticsStatsImpl();
+        stats = createStats();
+    }
+
+    protected GoogleAnalyticsStatsImpl createStats() {
+        return new GoogleAnalyticsStatsImpl().setInFlightBatchesGauge(() -> batchSender == null ? 0 : batchSender.getInFlightBatches())
+                .setCurrentBatchSizeGauge(() -> config.isBatchingEnabled() ? getBatchSize() : 0)
+                .setBufferedBytesGauge(() -> bufferBudget == null ? 0 : bufferBudget.getUsedBytes());
+    }
+
+    @Override
+    public GoogleAnalytics tenant(DefaultRequest tenantRequest) {
+        return new TenantGoogleAnalytics(this, this, tenantRequest);
     }
 
     @Override
@@ -379,9 +1919,22 @@ public class GoogleAnalyticsImpl implements GoogleAnalytics, GoogleAnalyticsExec
         runnable.run();
     }
 
+    /**
+     * Sends all the batched hits and waits until they are posted.
+     */
     @Override
     public void flush() {
+        if (batchSender == null) {
+            return;
+        }
+
         submitBatch(true);
+
+        try {
+            batchSender.awaitSent();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
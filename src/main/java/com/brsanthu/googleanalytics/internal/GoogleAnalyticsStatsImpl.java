@@ -15,6 +15,8 @@
 package com.brsanthu.googleanalytics.internal;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
 import com.brsanthu.googleanalytics.GoogleAnalyticsStats;
 
@@ -32,6 +34,44 @@ public class GoogleAnalyticsStatsImpl implements GoogleAnalyticsStats {
     private AtomicLong timingHits = new AtomicLong();
     private AtomicLong socialHits = new AtomicLong();
     private AtomicLong exceptionHits = new AtomicLong();
+    private AtomicLong droppedHits = new AtomicLong();
+    private AtomicLong sentHits = new AtomicLong();
+    private AtomicLong deliveredHits = new AtomicLong();
+    private AtomicLong sampledOutHits = new AtomicLong();
+    private AtomicLong overQuotaHits = new AtomicLong();
+    private AtomicLong expiredHits = new AtomicLong();
+    private AtomicLong retryAttempts = new AtomicLong();
+    private AtomicLong retrySuccesses = new AtomicLong();
+    private AtomicLong retryGiveUps = new AtomicLong();
+    private AtomicLong circuitOpenRejections = new AtomicLong();
+    private AtomicLong oversizedHits = new AtomicLong();
+    private AtomicLong memoryPressureShedHits = new AtomicLong();
+    private AtomicLong overloadCallerRunsHits = new AtomicLong();
+    private AtomicLong overloadDroppedNewestHits = new AtomicLong();
+    private AtomicLong overloadDroppedOldestHits = new AtomicLong();
+    private AtomicLong overloadBlockTimeoutHits = new AtomicLong();
+    private AtomicLong overloadShedHits = new AtomicLong();
+    private IntSupplier inFlightBatchesGauge = () -> 0;
+    private IntSupplier currentBatchSizeGauge = () -> 0;
+    private LongSupplier bufferedBytesGauge = () -> 0;
+
+    /**
+     * Gauges are read from their owners, as they describe the current state rather than counting the events.
+     */
+    public GoogleAnalyticsStatsImpl setInFlightBatchesGauge(IntSupplier inFlightBatchesGauge) {
+        this.inFlightBatchesGauge = inFlightBatchesGauge;
+        return this;
+    }
+
+    public GoogleAnalyticsStatsImpl setCurrentBatchSizeGauge(IntSupplier currentBatchSizeGauge) {
+        this.currentBatchSizeGauge = currentBatchSizeGauge;
+        return this;
+    }
+
+    public GoogleAnalyticsStatsImpl setBufferedBytesGauge(LongSupplier bufferedBytesGauge) {
+        this.bufferedBytesGauge = bufferedBytesGauge;
+        return this;
+    }
 
     public void exceptionHit() {
         exceptionHits.incrementAndGet();
@@ -65,6 +105,74 @@ public class GoogleAnalyticsStatsImpl implements GoogleAnalyticsStats {
         timingHits.incrementAndGet();
     }
 
+    public void droppedHit() {
+        droppedHits.incrementAndGet();
+    }
+
+    public void sampledOutHit() {
+        sampledOutHits.incrementAndGet();
+    }
+
+    public void overQuotaHit() {
+        overQuotaHits.incrementAndGet();
+    }
+
+    public void expiredHit() {
+        expiredHits.incrementAndGet();
+    }
+
+    public void retryAttempt() {
+        retryAttempts.incrementAndGet();
+    }
+
+    public void retrySuccess() {
+        retrySuccesses.incrementAndGet();
+    }
+
+    public void retryGiveUp() {
+        retryGiveUps.incrementAndGet();
+    }
+
+    public void circuitOpenRejection() {
+        circuitOpenRejections.incrementAndGet();
+    }
+
+    public void sentHits(int count) {
+        sentHits.addAndGet(count);
+    }
+
+    public void deliveredHits(int count) {
+        deliveredHits.addAndGet(count);
+    }
+
+    public void oversizedHit() {
+        oversizedHits.incrementAndGet();
+    }
+
+    public void memoryPressureShedHit() {
+        memoryPressureShedHits.incrementAndGet();
+    }
+
+    public void overloadCallerRunsHit() {
+        overloadCallerRunsHits.incrementAndGet();
+    }
+
+    public void overloadDroppedNewestHit() {
+        overloadDroppedNewestHits.incrementAndGet();
+    }
+
+    public void overloadDroppedOldestHit() {
+        overloadDroppedOldestHits.incrementAndGet();
+    }
+
+    public void overloadBlockTimeoutHit() {
+        overloadBlockTimeoutHits.incrementAndGet();
+    }
+
+    public void overloadShedHit() {
+        overloadShedHits.incrementAndGet();
+    }
+
     @Override
     public long getPageViewHits() {
         return pageViewHits.get();
@@ -105,10 +213,119 @@ public class GoogleAnalyticsStatsImpl implements GoogleAnalyticsStats {
         return exceptionHits.get();
     }
 
+    @Override
+    public long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    @Override
+    public long getSampledOutHits() {
+        return sampledOutHits.get();
+    }
+
+    @Override
+    public long getOverQuotaHits() {
+        return overQuotaHits.get();
+    }
+
+    @Override
+    public long getExpiredHits() {
+        return expiredHits.get();
+    }
+
+    @Override
+    public long getRetryAttempts() {
+        return retryAttempts.get();
+    }
+
+    @Override
+    public long getRetrySuccesses() {
+        return retrySuccesses.get();
+    }
+
+    @Override
+    public long getRetryGiveUps() {
+        return retryGiveUps.get();
+    }
+
+    @Override
+    public long getCircuitOpenRejections() {
+        return circuitOpenRejections.get();
+    }
+
+    @Override
+    public long getSentHits() {
+        return sentHits.get();
+    }
+
+    @Override
+    public long getDeliveredHits() {
+        return deliveredHits.get();
+    }
+
+    @Override
+    public long getOversizedHits() {
+        return oversizedHits.get();
+    }
+
+    @Override
+    public long getMemoryPressureShedHits() {
+        return memoryPressureShedHits.get();
+    }
+
+    @Override
+    public long getOverloadCallerRunsHits() {
+        return overloadCallerRunsHits.get();
+    }
+
+    @Override
+    public long getOverloadDroppedNewestHits() {
+        return overloadDroppedNewestHits.get();
+    }
+
+    @Override
+    public long getOverloadDroppedOldestHits() {
+        return overloadDroppedOldestHits.get();
+    }
+
+    @Override
+    public long getOverloadBlockTimeoutHits() {
+        return overloadBlockTimeoutHits.get();
+    }
+
+    @Override
+    public long getOverloadShedHits() {
+        return overloadShedHits.get();
+    }
+
+    @Override
+    public int getInFlightBatches() {
+        return inFlightBatchesGauge.getAsInt();
+    }
+
+    @Override
+    public int getCurrentBatchSize() {
+        return currentBatchSizeGauge.getAsInt();
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return bufferedBytesGauge.getAsLong();
+    }
+
     @Override
     public String toString() {
         return "GoogleAnalyticsStatsImpl [pageViewHits=" + pageViewHits + ", eventHits=" + eventHits + ", screenViewHits=" + screenViewHits
                 + ", itemHits=" + itemHits + ", transactionHits=" + transactionHits + ", timingHits=" + timingHits + ", socialHits=" + socialHits
-                + ", exceptionHits=" + exceptionHits + "]";
+                + ", exceptionHits=" + exceptionHits + ", droppedHits=" + droppedHits + ", sentHits=" + sentHits
+                + ", deliveredHits=" + deliveredHits
+                + ", sampledOutHits=" + sampledOutHits + ", overQuotaHits=" + overQuotaHits + ", expiredHits=" + expiredHits + ", oversizedHits="
+                + oversizedHits + ", memoryPressureShedHits=" + memoryPressureShedHits + ", retryAttempts=" + retryAttempts + ", retrySuccesses="
+                + retrySuccesses + ", retryGiveUps=" + retryGiveUps
+                + ", circuitOpenRejections=" + circuitOpenRejections
+                + ", overloadCallerRunsHits=" + overloadCallerRunsHits
+                + ", overloadDroppedNewestHits=" + overloadDroppedNewestHits + ", overloadDroppedOldestHits=" + overloadDroppedOldestHits
+                + ", overloadBlockTimeoutHits=" + overloadBlockTimeoutHits + ", overloadShedHits=" + overloadShedHits + ", inFlightBatches="
+                + getInFlightBatches() + ", bufferedBytes=" + getBufferedBytes() + "]";
     }
 }
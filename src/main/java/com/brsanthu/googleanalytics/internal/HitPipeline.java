@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsRequest;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+
+/**
+ * Ring of pre-allocated hit slots, in the style of LMAX Disruptor. Producers claim a slot with a CAS and store the hit
+ * in it, and a single encoder thread takes the hits out in order and passes them to the encode stage (which queues
+ * them for the batch sender stage). Publishing a hit doesn't allocate anything or take any lock.
+ * <p>
+ * Encoder thread doesn't need to be signalled by producers while it is busy. When there is nothing to do, it spins for
+ * a while, then yields and then parks for short periods. If it stays idle after that, it sets the sleeping flag and
+ * parks until a producer wakes it up, so an idle pipeline doesn't keep waking up the encoder. Producers only check the
+ * flag, and pay for the wake up call only when the encoder is asleep.
+ *
+ * @author Santhosh Kumar
+ */
+public class HitPipeline implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HitPipeline.class);
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final int PARK_TRIES = 1000;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int mask;
+    private final HitSlot[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final EncodeStage encodeStage;
+    private final Thread encoderThread;
+
+    private volatile long head = 0;
+    private volatile boolean running = true;
+    private volatile boolean aborted = false;
+    private volatile boolean sleeping = false;
+
+    /**
+     * Stage the hits are passed to, in the encoder thread. It must not block, as all the hits go through one thread.
+     */
+    @FunctionalInterface
+    public interface EncodeStage {
+        /**
+         * @param completion future of the hit to complete once it is processed, or null if nobody waits for it.
+         */
+        void encode(GoogleAnalyticsRequest<?> request, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion);
+    }
+
+    public HitPipeline(int capacity, ThreadFactory threadFactory, EncodeStage encodeStage) {
+        int size = 1;
+        while (size < Math.max(capacity, 2)) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.slots = new HitSlot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new HitSlot();
+            sequences.set(i, i);
+        }
+
+        this.encodeStage = encodeStage;
+        this.encoderThread = threadFactory.newThread(this::run);
+        this.encoderThread.start();
+    }
+
+    /**
+     * Stores the hit in the next free slot, along with the {@link System#nanoTime()} of when it was accepted.
+     *
+     * @return false if all slots are in use or pipeline is closed.
+     */
+    public boolean publish(GoogleAnalyticsRequest<?> request, long enqueuedNanos) {
+        return publish(request, enqueuedNanos, null);
+    }
+
+    /**
+     * Stores the hit along with the future which the encode stage completes.
+     *
+     * @return false if all slots are in use or pipeline is closed.
+     */
+    public boolean publish(GoogleAnalyticsRequest<?> request, long enqueuedNanos, CompletableFuture<GoogleAnalyticsResponse> completion) {
+        if (!running) {
+            return false;
+        }
+
+        long pos = tail.get();
+
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index].request = request;
+                    slots[index].enqueuedNanos = enqueuedNanos;
+                    slots[index].completion = completion;
+                    // Publishes the slot to the encoder thread. Volatile write, so the sleeping flag is read after it
+                    sequences.set(index, pos + 1);
+                    if (sleeping) {
+                        LockSupport.unpark(encoderThread);
+                    }
+                    return true;
+                }
+                pos = tail.get();
+
+            } else if (diff < 0) {
+                return false;
+
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, mask + 1));
+    }
+
+    private void run() {
+        int idleCount = 0;
+
+        while (!aborted && (running || size() > 0)) {
+            HitSlot slot = take();
+
+            if (slot == null) {
+                idle(idleCount++);
+                continue;
+            }
+
+            GoogleAnalyticsRequest<?> request = slot.request;
+            long enqueuedNanos = slot.enqueuedNanos;
+            CompletableFuture<GoogleAnalyticsResponse> completion = slot.completion;
+            release(slot);
+
+            idleCount = 0;
+            try {
+                encodeStage.encode(request, enqueuedNanos, completion);
+            } catch (Exception e) {
+                logger.warn("Exception while processing the Google Analytics tracker request " + request, e);
+                if (completion != null) {
+                    completion.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the oldest published slot, which must be released once its values are read.
+     */
+    private HitSlot take() {
+        long pos = head;
+        int index = (int) (pos & mask);
+
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+
+        return slots[index];
+    }
+
+    private void release(HitSlot slot) {
+        long pos = head;
+        slot.request = null;
+        slot.completion = null;
+
+        // Releases the slot for the producers of next lap
+        sequences.lazySet((int) (pos & mask), pos + mask + 1);
+        head = pos + 1;
+    }
+
+    private void idle(int idleCount) {
+        if (idleCount < SPIN_TRIES) {
+            return;
+        }
+
+        if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return;
+        }
+
+        if (idleCount < SPIN_TRIES + YIELD_TRIES + PARK_TRIES) {
+            // Parks longer the longer it is idle, up to the max
+            long parkNanos = Math.min(MAX_PARK_NANOS, TimeUnit.MICROSECONDS.toNanos(idleCount - SPIN_TRIES - YIELD_TRIES + 1));
+            LockSupport.parkNanos(this, parkNanos);
+            return;
+        }
+
+        sleeping = true;
+        // Checked again after the flag is set, so a hit published in between is not left waiting
+        if (running && !aborted && take() == null) {
+            LockSupport.park(this);
+        }
+        sleeping = false;
+    }
+
+    /**
+     * Stops accepting hits and waits for the already published hits to go through encode stage.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(encoderThread);
+
+        try {
+            encoderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting hits and waits up to the given time for the already published hits to go through encode stage.
+     * Encoder stops after that even if there are hits left.
+     *
+     * @return number of hits which were not processed in time.
+     */
+    public int close(long timeout, TimeUnit unit) {
+        running = false;
+        LockSupport.unpark(encoderThread);
+
+        try {
+            TimeUnit.NANOSECONDS.timedJoin(encoderThread, Math.max(unit.toNanos(timeout), 1));
+
+            if (encoderThread.isAlive()) {
+                aborted = true;
+                // Encode stage never blocks, so it is only a matter of finishing the current hit
+                encoderThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return size();
+        }
+
+        int remaining = size();
+        cancelRemaining();
+        return remaining;
+    }
+
+    /**
+     * Cancels the futures of the hits left in the slots once the encoder has stopped, so nobody waits on them for ever.
+     */
+    private void cancelRemaining() {
+        for (HitSlot slot; (slot = take()) != null;) {
+            if (slot.completion != null) {
+                slot.completion.cancel(false);
+            }
+            release(slot);
+        }
+    }
+
+    private static final class HitSlot {
+        private GoogleAnalyticsRequest<?> request;
+        private long enqueuedNanos;
+        private CompletableFuture<GoogleAnalyticsResponse> completion;
+    }
+}
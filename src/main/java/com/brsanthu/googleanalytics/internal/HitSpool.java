@@ -0,0 +1,329 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+
+/**
+ * Write-ahead log of the batched hits, kept in memory mapped segment files so hits which are not yet acknowledged by
+ * Google Analytics survive a crash or restart of the process.
+ * <p>
+ * Hits are appended to the active segment as records of <code>[length][state][hit time][encoded hit]</code>, where
+ * length is written last so a partly written record is never read back. Once a batch is acknowledged, its records are
+ * marked so in place, and a segment is deleted once it is full and all its records are acknowledged. That is the
+ * checkpoint: everything before the oldest remaining segment is sent.
+ * <p>
+ * Records left pending by a previous process are replayed by {@link #replay(String, Predicate)}, with the hit time
+ * stored as wall clock time, so their queue time includes the time the process was down. Appends take a lock, but only
+ * copy the bytes into the mapped memory; the OS writes them to disk. So the hits survive a crash of the process, but
+ * not necessarily of the machine.
+ *
+ * @author Santhosh Kumar
+ */
+public class HitSpool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HitSpool.class);
+
+    private static final String SEGMENT_PREFIX = "hits-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int HEADER_BYTES = 4 + 1 + 8;
+    private static final byte PENDING = 1;
+    private static final byte ACKNOWLEDGED = 2;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final List<Segment> replaySegments = new ArrayList<>();
+    private Segment active;
+    private boolean full;
+
+    public HitSpool(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(segmentBytes, HEADER_BYTES + Constants.MAX_HIT_BYTES);
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+
+        int lastId = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            List<Path> paths = new ArrayList<>();
+            files.forEach(paths::add);
+            paths.sort(null);
+
+            for (Path path : paths) {
+                Segment segment = Segment.open(path);
+                lastId = Math.max(lastId, segment.id);
+                segment.sealed = true;
+
+                if (segment.pending.get() == 0) {
+                    delete(segment);
+                } else {
+                    segments.put(segment.id, segment);
+                    replaySegments.add(segment);
+                }
+            }
+        }
+
+        active = createSegment(lastId + 1);
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = Segment.create(id, path, segmentBytes);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Appends the hit, without its queue time which is worked out from the hit time when it is sent. If the hit time is
+     * not known, queue time set on the hit is kept by storing the hit time as that long before now.
+     *
+     * @return position of the record, or {@link HttpRequest#NO_SPOOL_POSITION} if the spool is full or couldn't be
+     *         written, in which case the hit is only kept in memory.
+     */
+    public synchronized long append(HttpRequest httpReq) {
+        if (active == null) {
+            return HttpRequest.NO_SPOOL_POSITION;
+        }
+
+        byte[] body = httpReq.getEncodedParams().getBytes(StandardCharsets.US_ASCII);
+        int recordBytes = HEADER_BYTES + body.length;
+        if (recordBytes > segmentBytes) {
+            return HttpRequest.NO_SPOOL_POSITION;
+        }
+
+        try {
+            if (active.writeOffset + recordBytes > segmentBytes) {
+                if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+                    if (!full) {
+                        full = true;
+                        logger.warn("Google Analytics spool in " + directory + " is full (" + maxBytes
+                                + " bytes), hits are only kept in memory until the spooled ones are sent");
+                    }
+                    return HttpRequest.NO_SPOOL_POSITION;
+                }
+
+                Segment filled = active;
+                active = createSegment(filled.id + 1);
+                seal(filled);
+
+                if (full) {
+                    full = false;
+                    logger.info("Google Analytics spool in " + directory + " has room again, spooling the hits");
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Couldn't create the Google Analytics spool segment, hits are only kept in memory", e);
+            return HttpRequest.NO_SPOOL_POSITION;
+        }
+
+        long hitMillis = System.currentTimeMillis();
+        if (httpReq.hasHitTime()) {
+            hitMillis -= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - httpReq.getHitNanos());
+        } else if (httpReq.getQueueTime() != null) {
+            hitMillis -= parseQueueTime(httpReq.getQueueTime());
+        }
+
+        int offset = active.append(body, hitMillis);
+        return ((long) active.id << 32) | offset;
+    }
+
+    private static long parseQueueTime(String queueTime) {
+        try {
+            return Math.max(Long.parseLong(queueTime.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Marks the hit at given position as done with (sent, expired or dropped), so it is not replayed. Hits which failed
+     * to send are left pending, so they are replayed by the next instance.
+     */
+    public void acknowledge(long position) {
+        if (position == HttpRequest.NO_SPOOL_POSITION) {
+            return;
+        }
+
+        Segment segment = segments.get((int) (position >>> 32));
+        if (segment != null && segment.acknowledge((int) position) && segment.sealed) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Passes the hits left pending by the previous process, oldest first, until the consumer returns false. Replayed
+     * hits stay in the spool until they are acknowledged.
+     */
+    public void replay(String url, Predicate<HttpRequest> consumer) {
+        for (Segment segment : replaySegments) {
+            for (int offset = 0; (offset = segment.nextPending(offset)) >= 0; offset += HEADER_BYTES + segment.length(offset)) {
+                HttpRequest httpReq = HttpRequest.fromEncodedParams(url, segment.body(offset));
+                httpReq.setHitNanos(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Math.max(System.currentTimeMillis() - segment.hitMillis(offset), 0)));
+                httpReq.setSpoolPosition(((long) segment.id << 32) | offset);
+
+                if (!consumer.test(httpReq)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void seal(Segment segment) {
+        segment.sealed = true;
+        if (segment.pending.get() == 0) {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        if (!segment.deleted.compareAndSet(false, true)) {
+            return;
+        }
+
+        segments.remove(segment.id);
+        try {
+            // Mapping is released once the buffer is collected, which some platforms need before the file can go
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.debug("Couldn't delete the Google Analytics spool segment " + segment.path, e);
+        }
+    }
+
+    public int getPendingHits() {
+        return segments.values().stream().mapToInt(s -> s.pending.get()).sum();
+    }
+
+    /**
+     * Flushes the segments to disk. Hits which are still pending are replayed by the next instance using the same
+     * directory.
+     */
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(s -> s.buffer.force());
+        active = null;
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private volatile boolean sealed;
+        private int writeOffset;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(int id, Path path, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(id, path, channel.map(MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        private static Segment open(Path path) throws IOException {
+            String name = path.getFileName().toString();
+            int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Segment segment = new Segment(id, path, channel.map(MapMode.READ_WRITE, 0, channel.size()));
+                for (int offset = 0; (offset = segment.nextPending(offset)) >= 0; offset += HEADER_BYTES + segment.length(offset)) {
+                    segment.pending.incrementAndGet();
+                }
+                return segment;
+            }
+        }
+
+        private int append(byte[] body, long hitMillis) {
+            int offset = writeOffset;
+            pending.incrementAndGet();
+
+            buffer.put(offset + 4, PENDING);
+            buffer.putLong(offset + 5, hitMillis);
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset + HEADER_BYTES);
+            slice.put(body);
+
+            // Written last, as a non zero length is what makes the record valid
+            buffer.putInt(offset, body.length);
+
+            writeOffset += HEADER_BYTES + body.length;
+            return offset;
+        }
+
+        /**
+         * @return true if it was the last pending record.
+         */
+        private boolean acknowledge(int offset) {
+            buffer.put(offset + 4, ACKNOWLEDGED);
+            return pending.decrementAndGet() == 0;
+        }
+
+        private int length(int offset) {
+            return buffer.getInt(offset);
+        }
+
+        private long hitMillis(int offset) {
+            return buffer.getLong(offset + 5);
+        }
+
+        private String body(int offset) {
+            byte[] body = new byte[length(offset)];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset + HEADER_BYTES);
+            slice.get(body);
+            return new String(body, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @return offset of the first pending record at or after given offset, or -1 if there is none.
+         */
+        private int nextPending(int offset) {
+            while (offset + HEADER_BYTES <= buffer.capacity()) {
+                int length = length(offset);
+                if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                    return -1;
+                }
+                if (buffer.get(offset + 4) == PENDING) {
+                    return offset;
+                }
+                offset += HEADER_BYTES + length;
+            }
+            return -1;
+        }
+    }
+}
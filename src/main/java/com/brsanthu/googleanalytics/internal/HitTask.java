@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.brsanthu.googleanalytics.HitPriority;
+
+/**
+ * Asynchronous task which sends a hit, tagged with the priority of the hit so that overload handling can tell the
+ * tasks apart while they are queued in the executor.
+ *
+ * @author Santhosh Kumar
+ */
+public class HitTask<V> extends FutureTask<V> {
+    private final HitPriority priority;
+    private BufferBudget budget;
+    private long chargedBytes;
+
+    public HitTask(HitPriority priority, Callable<V> callable) {
+        super(callable);
+        this.priority = priority;
+    }
+
+    public HitTask(HitPriority priority, Runnable runnable) {
+        super(runnable, null);
+        this.priority = priority;
+    }
+
+    public HitPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Reserves the given bytes for this task in the budget, which are released once the task is done or cancelled.
+     *
+     * @return false if the budget doesn't have that many bytes left.
+     */
+    public boolean charge(BufferBudget budget, long bytes) {
+        if (this.budget != null || isDone()) {
+            return true;
+        }
+
+        if (!budget.tryReserve(bytes)) {
+            return false;
+        }
+
+        this.budget = budget;
+        this.chargedBytes = bytes;
+        return true;
+    }
+
+    /**
+     * Subclasses overriding this must call this one too, so the charged bytes are released.
+     */
+    @Override
+    protected void done() {
+        if (budget != null) {
+            budget.release(chargedBytes);
+        }
+    }
+
+    public static HitPriority priorityOf(Runnable task) {
+        return task instanceof HitTask ? ((HitTask<?>) task).getPriority() : HitPriority.NORMAL;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells when the heap is under pressure, so hits can be shed before buffering them adds to the garbage collection
+ * work.
+ * <p>
+ * Polls the usage of the heap pools as of their last collection, which tells what is actually live, and compares it
+ * with the given fraction of their max size. Polling is done by the threads asking {@link #isUnderPressure()}, at most
+ * once per check interval, so there is no thread of its own. Nothing is set on the pools, so the guard doesn't get in
+ * the way of anyone else watching the JVM's memory (or of other guards).
+ *
+ * @author Santhosh Kumar
+ */
+public class MemoryPressureGuard {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPressureGuard.class);
+
+    private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 100;
+
+    private final double threshold;
+    private final long checkIntervalNanos;
+    private final Runnable onPressure;
+    private final Runnable onRecovery;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final AtomicBoolean underPressure = new AtomicBoolean();
+    private final AtomicLong nextCheckNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param threshold fraction of the max size of heap pools, beyond which heap is considered under pressure.
+     * @param onPressure called once when the heap goes under pressure.
+     * @param onRecovery called once when the pressure subsides.
+     */
+    public MemoryPressureGuard(double threshold, Runnable onPressure, Runnable onRecovery) {
+        this(threshold, DEFAULT_CHECK_INTERVAL_MILLIS, onPressure, onRecovery);
+    }
+
+    /**
+     * @param checkIntervalMillis how often the heap pools are checked, or 0 to check them on every call.
+     */
+    public MemoryPressureGuard(double threshold, long checkIntervalMillis, Runnable onPressure, Runnable onRecovery) {
+        this.threshold = Math.min(Math.max(threshold, 0), 1);
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(checkIntervalMillis, 0));
+        this.onPressure = onPressure;
+        this.onRecovery = onRecovery;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null && pool.getUsage().getMax() > 0) {
+                pools.add(pool);
+            }
+        }
+
+        if (pools.isEmpty()) {
+            logger.warn("None of the heap pools report their usage after collection, so memory pressure is not detected");
+        }
+    }
+
+    private long thresholdBytes(long max) {
+        return Math.max((long) (max * threshold), 1);
+    }
+
+    /**
+     * Tells whether the heap is under pressure. Checks the heap pools if the check interval has passed since the last
+     * check, and calls the pressure or recovery callback in this thread if the state changes.
+     */
+    public boolean isUnderPressure() {
+        long now = System.nanoTime();
+        long next = nextCheckNanos.get();
+
+        // Only one of the threads which find the interval passed does the check
+        if (now - next < 0 || !nextCheckNanos.compareAndSet(next, now + checkIntervalNanos)) {
+            return underPressure.get();
+        }
+
+        if (isOverThreshold()) {
+            if (underPressure.compareAndSet(false, true)) {
+                logger.warn("Heap usage is over " + Math.round(threshold * 100) + "%, shedding the Google Analytics hits");
+                onPressure.run();
+            }
+            return true;
+        }
+
+        if (underPressure.compareAndSet(true, false)) {
+            logger.info("Heap usage is back under " + Math.round(threshold * 100) + "%, Google Analytics hits are buffered as usual again");
+            onRecovery.run();
+        }
+        return false;
+    }
+
+    /**
+     * Checks the usage of the heap pools as of their last collection.
+     */
+    protected boolean isOverThreshold() {
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0 && usage.getUsed() >= thresholdBytes(usage.getMax())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
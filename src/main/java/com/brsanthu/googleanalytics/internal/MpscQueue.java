@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+/**
+ * Bounded multi-producer/single-consumer queue used to buffer the hits for batching. {@link #offer(Object)} can be
+ * called from any thread, but {@link #peek()} and {@link #poll()} must only be called by one thread at a time.
+ *
+ * @author Santhosh Kumar
+ */
+public interface MpscQueue<E> {
+
+    /**
+     * Adds the element to the queue.
+     *
+     * @return false if the queue is full.
+     */
+    boolean offer(E element);
+
+    /**
+     * Returns the element which {@link #poll()} would return next, without removing it.
+     */
+    E peek();
+
+    /**
+     * Removes the next element.
+     *
+     * @return next element or null if queue is empty.
+     */
+    E poll();
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity();
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer/single-consumer queue.
+ * <p>
+ * Each slot carries a sequence number which tells whether it is free for the producer of a given position or
+ * published for the consumer (based on Dmitry Vyukov's bounded queue). Producers only CAS the tail to claim a slot,
+ * so they never block each other. {@link #poll()} must only be called by one thread at a time, which is ensured by
+ * the callers.
+ *
+ * @author Santhosh Kumar
+ */
+public class MpscRingBuffer<E> implements MpscQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    public MpscRingBuffer(int capacity) {
+        int size = 1;
+        while (size < Math.max(capacity, 2)) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(E element) {
+        long pos = tail.get();
+
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, element);
+                    // Publishes the element to the consumer
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+
+            } else if (diff < 0) {
+                // Slot is not yet consumed from the previous lap, so queue is full
+                return false;
+
+            } else {
+                // Another producer claimed this position already
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest published element. Must be called by single consumer at a time.
+     *
+     * @return oldest element or null if queue is empty (or the oldest claimed slot is not yet published).
+     */
+    @Override
+    public E poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        // Releases the slot for the producers of next lap
+        sequences.lazySet(index, pos + mask + 1);
+        head = pos + 1;
+
+        return element;
+    }
+
+    /**
+     * Returns the oldest published element without removing it. Must be called by single consumer at a time.
+     */
+    @Override
+    public E peek() {
+        long pos = head;
+        int index = (int) (pos & mask);
+
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    @Override
+    public int capacity() {
+        return mask + 1;
+    }
+}
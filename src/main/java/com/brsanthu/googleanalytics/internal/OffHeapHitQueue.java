@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+
+/**
+ * Batch queue which keeps the hits as encoded bytes in a direct buffer, outside of the GC heap, so a large backlog of
+ * hits doesn't fill up the old generation with request objects. Hits are taken out as requests built from the encoded
+ * params, which are only decoded if their params are asked for.
+ * <p>
+ * Buffer is a ring of <code>[length][hit time][spool position][flags][encoded hit]</code> records, bounded by both its
+ * size in bytes and number of hits. Records which don't fit before the end of the buffer start over at the beginning.
+ * Producers take a lock only to copy the bytes in, and publish the record by moving the tail. Consumer frees the
+ * records by moving the head, without any lock.
+ * <p>
+ * Hits whose sender waits for the delivery ({@link TrackedHttpRequest}) are kept as is on the heap, along with their
+ * future, and the record only marks their place in the queue.
+ *
+ * @author Santhosh Kumar
+ */
+public class OffHeapHitQueue implements MpscQueue<HttpRequest> {
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 1;
+    private static final int WRAP = -1;
+    private static final byte ENCODED = 0;
+    private static final byte TRACKED = 1;
+
+    private final String url;
+    private final ByteBuffer buffer;
+    private final int capacityBytes;
+    private final int capacity;
+    private final MpscRingBuffer<HttpRequest> trackedHits;
+
+    // Positions in bytes and counts of hits since the start, so they only grow
+    private volatile long tail = 0;
+    private volatile long head = 0;
+    private volatile long offered = 0;
+    private volatile long polled = 0;
+
+    // Taken out by peek, but not yet polled
+    private HttpRequest peeked;
+    private long peekedNext;
+
+    public OffHeapHitQueue(String url, int capacityBytes, int capacity) {
+        this.url = url;
+        this.capacityBytes = Math.max(capacityBytes, HEADER_BYTES + Constants.MAX_HIT_BYTES);
+        this.capacity = Math.max(capacity, 1);
+        this.buffer = ByteBuffer.allocateDirect(this.capacityBytes);
+        this.trackedHits = new MpscRingBuffer<>(this.capacity);
+    }
+
+    @Override
+    public boolean offer(HttpRequest httpReq) {
+        boolean tracked = httpReq instanceof TrackedHttpRequest;
+
+        // Queue time is worked out again when sent, unless hit time is not known
+        byte[] body = tracked ? new byte[0]
+                : (httpReq.hasHitTime() ? httpReq.getEncodedParams() : httpReq.getEncodedBody()).getBytes(StandardCharsets.US_ASCII);
+        int recordBytes = HEADER_BYTES + body.length;
+
+        synchronized (this) {
+            if (offered - polled >= capacity) {
+                return false;
+            }
+
+            long pos = tail;
+            int index = (int) (pos % capacityBytes);
+            int skip = index + recordBytes > capacityBytes ? capacityBytes - index : 0;
+            if (pos + skip + recordBytes - head > capacityBytes) {
+                return false;
+            }
+
+            if (tracked && !trackedHits.offer(httpReq)) {
+                return false;
+            }
+
+            if (skip > 0) {
+                // Consumer wraps on its own if there is no room for a header
+                if (skip >= HEADER_BYTES) {
+                    buffer.putInt(index, WRAP);
+                }
+                index = 0;
+            }
+
+            buffer.putInt(index, body.length);
+            buffer.putLong(index + 4, httpReq.getHitNanos());
+            buffer.putLong(index + 12, httpReq.getSpoolPosition());
+            buffer.put(index + 20, tracked ? TRACKED : ENCODED);
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(index + HEADER_BYTES);
+            slice.put(body);
+
+            offered++;
+            // Publishes the record to the consumer
+            tail = pos + skip + recordBytes;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the oldest hit without removing it. Must be called by single consumer at a time.
+     */
+    @Override
+    public HttpRequest peek() {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        long pos = head;
+        if (pos == tail) {
+            return null;
+        }
+
+        int index = (int) (pos % capacityBytes);
+        if (capacityBytes - index < HEADER_BYTES || buffer.getInt(index) == WRAP) {
+            pos += capacityBytes - index;
+            index = 0;
+        }
+
+        int length = buffer.getInt(index);
+        if (buffer.get(index + 20) == TRACKED) {
+            peeked = trackedHits.poll();
+        } else {
+            byte[] body = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(index + HEADER_BYTES);
+            slice.get(body);
+
+            peeked = HttpRequest.fromEncodedParams(url, new String(body, StandardCharsets.US_ASCII));
+            peeked.setHitNanos(buffer.getLong(index + 4));
+            peeked.setSpoolPosition(buffer.getLong(index + 12));
+        }
+
+        peekedNext = pos + HEADER_BYTES + length;
+        return peeked;
+    }
+
+    /**
+     * Removes the oldest hit. Must be called by single consumer at a time.
+     */
+    @Override
+    public HttpRequest poll() {
+        HttpRequest httpReq = peek();
+        if (httpReq == null) {
+            return null;
+        }
+
+        peeked = null;
+        polled++;
+        // Releases the bytes for the producers
+        head = peekedNext;
+        return httpReq;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, offered - polled);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes taken by the queued hits, including the record headers and the space skipped at the end of the buffer.
+     */
+    public long getUsedBytes() {
+        return tail - head;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import com.brsanthu.googleanalytics.HitPriority;
+
+/**
+ * Batch queue with one {@link MpscQueue} per {@link HitPriority} lane, each with its own capacity.
+ * <p>
+ * Batches are cut by calling {@link #startBatch(int)} and then taking the hits with {@link #peek()} and {@link #poll()}.
+ * Each non-empty lane gets a share of the batch as per its weight, and the shares are filled in the order of
+ * priority. Room left over by lanes with fewer hits than their share goes to the other lanes, again in the order of
+ * priority. So higher lanes are drained first, but lower lanes are not starved while higher ones are busy.
+ * <p>
+ * Like the lanes themselves, {@link #peek()} and {@link #poll()} must only be called by one thread at a time.
+ *
+ * @author Santhosh Kumar
+ */
+public class PriorityLaneQueue<E> {
+    private static final HitPriority[] PRIORITIES = HitPriority.values();
+
+    private final MpscQueue<E>[] lanes;
+    private final int[] weights;
+    private final int[] quotas;
+
+    // Lane of the element returned by last peek, so poll takes the same one even if a higher lane got an element since
+    private int peekedLane = -1;
+
+    @SuppressWarnings("unchecked")
+    public PriorityLaneQueue(Function<HitPriority, MpscQueue<E>> laneFactory, ToIntFunction<HitPriority> laneWeight) {
+        lanes = new MpscQueue[PRIORITIES.length];
+        weights = new int[PRIORITIES.length];
+        quotas = new int[PRIORITIES.length];
+
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            lanes[i] = laneFactory.apply(PRIORITIES[i]);
+            weights[i] = Math.max(laneWeight.applyAsInt(PRIORITIES[i]), 1);
+        }
+    }
+
+    public boolean offer(HitPriority priority, E element) {
+        return lanes[priority.ordinal()].offer(element);
+    }
+
+    /**
+     * Splits the batch of given size between the lanes which have elements at the moment, as per their weights.
+     */
+    public void startBatch(int batchSize) {
+        int totalWeight = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            if (!lanes[i].isEmpty()) {
+                totalWeight += weights[i];
+            }
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            quotas[i] = totalWeight == 0 || lanes[i].isEmpty() ? 0 : (batchSize * weights[i] + totalWeight - 1) / totalWeight;
+        }
+        peekedLane = -1;
+    }
+
+    public E peek() {
+        peekedLane = nextLane();
+        return peekedLane < 0 ? null : lanes[peekedLane].peek();
+    }
+
+    public E poll() {
+        int lane = peekedLane >= 0 ? peekedLane : nextLane();
+        peekedLane = -1;
+
+        if (lane < 0) {
+            return null;
+        }
+
+        if (quotas[lane] > 0) {
+            quotas[lane]--;
+        }
+        return lanes[lane].poll();
+    }
+
+    /**
+     * Removes the oldest element of the lowest non-empty lane, leaving the lanes above the given priority alone. Must
+     * not be called while a batch is being taken out.
+     */
+    public E pollLowest(HitPriority highest) {
+        for (int i = lanes.length - 1; i >= highest.ordinal(); i--) {
+            E element = lanes[i].poll();
+            if (element != null) {
+                return element;
+            }
+        }
+
+        return null;
+    }
+
+    private int nextLane() {
+        for (int i = 0; i < lanes.length; i++) {
+            if (quotas[i] > 0 && !lanes[i].isEmpty()) {
+                return i;
+            }
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            if (!lanes[i].isEmpty()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int size() {
+        int size = 0;
+        for (MpscQueue<E> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    public int size(HitPriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    public boolean isEmpty() {
+        for (MpscQueue<E> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
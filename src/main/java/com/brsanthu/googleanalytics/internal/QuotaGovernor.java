@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket quotas of the hits per tracking id and per client id (within a tracking id), checked before the hits
+ * are sent so the ones which Google Analytics would discard anyway don't use up the connections.
+ * <p>
+ * Buckets live in fixed size tables indexed by the hash of the ids, so memory doesn't grow with the number of ids.
+ * Ids which hash to the same bucket share the quota, which can only make the limit stricter for them. Each bucket is
+ * guarded by its own lock, which is only held for a few arithmetic operations.
+ *
+ * @author Santhosh Kumar
+ */
+public class QuotaGovernor {
+    private final TokenBucket[] propertyBuckets;
+    private final TokenBucket[] clientBuckets;
+    private final int mask;
+
+    /**
+     * @param buckets number of buckets in each table, rounded up to a power of two.
+     * @param propertyHitsPerSecond rate of the hits per tracking id, or 0 to not limit them.
+     * @param clientHitsPerSecond rate of the hits per client id, or 0 to not limit them.
+     */
+    public QuotaGovernor(int buckets, double propertyHitsPerSecond, int propertyHitBurst, double clientHitsPerSecond, int clientHitBurst) {
+        int size = 1;
+        while (size < Math.max(buckets, 1)) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.propertyBuckets = createBuckets(size, propertyHitsPerSecond, propertyHitBurst);
+        this.clientBuckets = createBuckets(size, clientHitsPerSecond, clientHitBurst);
+    }
+
+    private static TokenBucket[] createBuckets(int size, double hitsPerSecond, int burst) {
+        if (hitsPerSecond <= 0) {
+            return null;
+        }
+
+        TokenBucket[] buckets = new TokenBucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new TokenBucket(hitsPerSecond, Math.max(burst, 1));
+        }
+        return buckets;
+    }
+
+    public boolean isEnabled() {
+        return propertyBuckets != null || clientBuckets != null;
+    }
+
+    public boolean tryAcquire(String trackingId, String clientId) {
+        return tryAcquire(trackingId, clientId, System.nanoTime());
+    }
+
+    /**
+     * Takes a token for the hit from the bucket of its client and of its tracking id.
+     *
+     * @return false if either of them is over the quota, in which case neither is charged.
+     */
+    public boolean tryAcquire(String trackingId, String clientId, long nanoTime) {
+        int propertyHash = trackingId == null ? 0 : GaUtils.fnv1a(trackingId);
+
+        TokenBucket clientBucket = null;
+        if (clientBuckets != null) {
+            int clientHash = clientId == null ? 0 : GaUtils.fnv1a(clientId);
+            clientBucket = clientBuckets[(clientHash ^ propertyHash * 0x9E3779B9) & mask];
+            if (!clientBucket.tryAcquire(nanoTime)) {
+                return false;
+            }
+        }
+
+        if (propertyBuckets != null && !propertyBuckets[propertyHash & mask].tryAcquire(nanoTime)) {
+            if (clientBucket != null) {
+                clientBucket.release();
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final int capacity;
+        private double tokens;
+        private long lastNanos;
+        private boolean started;
+
+        private TokenBucket(double tokensPerSecond, int capacity) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+        }
+
+        private synchronized boolean tryAcquire(long nanoTime) {
+            if (!started) {
+                // Buckets start full, so the first use isn't limited by when the table was created
+                started = true;
+                tokens = capacity;
+                lastNanos = nanoTime;
+            } else if (nanoTime - lastNanos > 0) {
+                tokens = Math.min(capacity, tokens + (nanoTime - lastNanos) * tokensPerNano);
+                lastNanos = nanoTime;
+            }
+
+            if (tokens < 1) {
+                return false;
+            }
+
+            tokens--;
+            return true;
+        }
+
+        private synchronized void release() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+}
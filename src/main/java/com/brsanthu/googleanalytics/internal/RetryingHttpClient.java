@@ -0,0 +1,282 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
+import com.brsanthu.googleanalytics.httpclient.AsyncHttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+/**
+ * Http client which sends the hits again through the given client if they failed for a reason which may go away: no
+ * response (status <code>0</code> or an exception), rate limiting (<code>429</code>) or server error
+ * (<code>5xx</code>). Retries wait with exponential backoff and full jitter, in the sending thread.
+ * <p>
+ * Retries draw from a budget shared by all requests, which earns a fraction of a retry for each request and is capped.
+ * During an outage, retries add only that fraction to the load rather than multiplying it. Hits are encoded once, and
+ * only their queue time is updated for each retry.
+ * <p>
+ * Asynchronous requests are sent without blocking if the given client is an {@link AsyncHttpClient}, and their
+ * retries are scheduled on a timer thread (started on first use) instead of waiting in the sending thread.
+ *
+ * @author Santhosh Kumar
+ */
+public class RetryingHttpClient implements AsyncHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(RetryingHttpClient.class);
+
+    // Budget is kept in thousandths of a retry, so fractions can be added atomically
+    private static final long RETRY_COST = 1000;
+
+    private final HttpClient delegate;
+    private final Supplier<GoogleAnalyticsStatsImpl> stats;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long budgetPerRequest;
+    private final long maxBudget;
+    private final AtomicLong budget;
+    private final String threadNameFormat;
+    private final Set<Runnable> pendingRetries = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService retryScheduler;
+    private boolean closed;
+
+    public RetryingHttpClient(HttpClient delegate, GoogleAnalyticsConfig config, Supplier<GoogleAnalyticsStatsImpl> stats) {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.maxRetries = config.getMaxRetries();
+        this.initialBackoffMillis = Math.max(config.getRetryInitialBackoffMillis(), 1);
+        this.maxBackoffMillis = Math.max(config.getRetryMaxBackoffMillis(), initialBackoffMillis);
+        this.budgetPerRequest = Math.round(config.getRetryBudgetRatio() * RETRY_COST);
+        this.maxBudget = Math.max(config.getRetryBudgetMax(), 0) * RETRY_COST;
+        this.budget = new AtomicLong(maxBudget);
+        this.threadNameFormat = config.getThreadNameFormat().replace("{0}", "retry-{0}");
+    }
+
+    @Override
+    public HttpResponse post(HttpRequest req) {
+        return send(() -> delegate.post(req), HttpResponse::getStatusCode, () -> req.updateQueueTime(System.nanoTime()), req);
+    }
+
+    @Override
+    public HttpBatchResponse postBatch(HttpBatchRequest req) {
+        return send(() -> delegate.postBatch(req), HttpBatchResponse::getStatusCode,
+                () -> req.getRequests().forEach(r -> r.updateQueueTime(System.nanoTime())), req);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> postAsync(HttpRequest req) {
+        earnBudget();
+        return sendAsync(() -> AsyncHttpClient.sendAsync(delegate, req), HttpResponse::getStatusCode,
+                () -> req.updateQueueTime(System.nanoTime()), req, 0);
+    }
+
+    @Override
+    public CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req) {
+        earnBudget();
+        return sendAsync(() -> AsyncHttpClient.sendBatchAsync(delegate, req), HttpBatchResponse::getStatusCode,
+                () -> req.getRequests().forEach(r -> r.updateQueueTime(System.nanoTime())), req, 0);
+    }
+
+    private <R> CompletableFuture<R> sendAsync(Supplier<CompletableFuture<R>> attempt, ToIntFunction<R> statusCode, Runnable beforeRetry,
+            Object req, int retry) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+
+        attempt.get().whenComplete((resp, error) -> {
+            int status = resp == null ? 0 : statusCode.applyAsInt(resp);
+            if (error == null && !isRetryable(status)) {
+                if (retry > 0 && status >= 200 && status < 300) {
+                    stats.get().retrySuccess();
+                }
+                result.complete(resp);
+                return;
+            }
+
+            Runnable giveUp = () -> {
+                stats.get().retryGiveUp();
+                logger.debug("Giving up on the Google Analytics request " + req + " after " + retry + " retries");
+                complete(result, resp, error);
+            };
+
+            if (retry >= maxRetries || !spendBudget() || !scheduleRetry(retry, giveUp, () -> {
+                stats.get().retryAttempt();
+                beforeRetry.run();
+                sendAsync(attempt, statusCode, beforeRetry, req, retry + 1).whenComplete((r, e) -> complete(result, r, e));
+            })) {
+                giveUp.run();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Schedules the retry after its backoff. If the client is closed before then, the retry gives up instead.
+     *
+     * @return <code>false</code> if the client is already closed.
+     */
+    private synchronized boolean scheduleRetry(int retry, Runnable giveUp, Runnable send) {
+        if (closed) {
+            return false;
+        }
+
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(new GoogleAnalyticsThreadFactory(threadNameFormat));
+        }
+
+        pendingRetries.add(giveUp);
+        try {
+            retryScheduler.schedule(() -> {
+                if (pendingRetries.remove(giveUp)) {
+                    send.run();
+                }
+            }, backoffMillis(retry), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingRetries.remove(giveUp);
+            return false;
+        }
+    }
+
+    private static <R> void complete(CompletableFuture<R> future, R value, Throwable error) {
+        if (error == null) {
+            future.complete(value);
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+
+    private <R> R send(Supplier<R> attempt, ToIntFunction<R> statusCode, Runnable beforeRetry, Object req) {
+        earnBudget();
+
+        for (int retry = 0;; retry++) {
+            R resp = null;
+            RuntimeException error = null;
+            try {
+                resp = attempt.get();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            int status = resp == null ? 0 : statusCode.applyAsInt(resp);
+            if (error == null && !isRetryable(status)) {
+                if (retry > 0 && status >= 200 && status < 300) {
+                    stats.get().retrySuccess();
+                }
+                return resp;
+            }
+
+            if (retry >= maxRetries || !spendBudget() || !backoff(retry)) {
+                stats.get().retryGiveUp();
+                logger.debug("Giving up on the Google Analytics request " + req + " after " + retry + " retries");
+                if (error != null) {
+                    throw error;
+                }
+                return resp;
+            }
+
+            stats.get().retryAttempt();
+            beforeRetry.run();
+        }
+    }
+
+    protected boolean isRetryable(int statusCode) {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    private void earnBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current >= maxBudget) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(current + budgetPerRequest, maxBudget)));
+    }
+
+    private boolean spendBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < RETRY_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - RETRY_COST));
+
+        return true;
+    }
+
+    /**
+     * Waits a random time up to the backoff of given retry.
+     *
+     * @return false if interrupted, in which case the request is not retried.
+     */
+    private boolean backoff(int retry) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoffMillis(retry));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Random time up to the backoff of given retry.
+     */
+    private long backoffMillis(int retry) {
+        long bound = initialBackoffMillis << Math.min(retry, 30);
+        if (bound <= 0 || bound > maxBackoffMillis) {
+            bound = maxBackoffMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    @Override
+    public boolean isBatchSupported() {
+        return delegate.isBatchSupported();
+    }
+
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            closed = true;
+            if (retryScheduler != null) {
+                retryScheduler.shutdownNow();
+            }
+        }
+
+        // Retries which were waiting for their backoff give up, so their futures still complete
+        for (Runnable giveUp : pendingRetries) {
+            if (pendingRetries.remove(giveUp)) {
+                giveUp.run();
+            }
+        }
+        delegate.close();
+    }
+}
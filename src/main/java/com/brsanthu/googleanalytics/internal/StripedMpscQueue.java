@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue made of several {@link MpscRingBuffer} stripes. Each producer thread is mapped to one stripe based on an index
+ * given to the thread on its first offer, so producers on different stripes don't compete for the same tail and cache lines. If the stripe of the thread is
+ * full, other stripes are tried before giving up, so total capacity is still usable by any thread.
+ * <p>
+ * Consumer goes around the stripes, taking everything from one stripe before moving to the next one. Order of the
+ * elements is kept within a stripe but not across stripes.
+ *
+ * @author Santhosh Kumar
+ */
+public class StripedMpscQueue<E> implements MpscQueue<E> {
+    private static final AtomicInteger nextThreadIndex = new AtomicInteger();
+    private static final ThreadLocal<Integer> threadIndex = ThreadLocal.withInitial(nextThreadIndex::getAndIncrement);
+
+    private final MpscRingBuffer<E>[] stripes;
+    private final int mask;
+
+    // Only accessed by the consumer
+    private int current = 0;
+
+    @SuppressWarnings("unchecked")
+    public StripedMpscQueue(int stripeCount, int capacity) {
+        int count = 1;
+        while (count < Math.max(stripeCount, 1)) {
+            count <<= 1;
+        }
+
+        mask = count - 1;
+        stripes = new MpscRingBuffer[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new MpscRingBuffer<>(Math.max(capacity / count, 1));
+        }
+    }
+
+    @Override
+    public boolean offer(E element) {
+        int home = threadIndex.get() & mask;
+
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[(home + i) & mask].offer(element)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public E peek() {
+        MpscRingBuffer<E> stripe = currentStripe();
+        return stripe == null ? null : stripe.peek();
+    }
+
+    @Override
+    public E poll() {
+        MpscRingBuffer<E> stripe = currentStripe();
+        return stripe == null ? null : stripe.poll();
+    }
+
+    /**
+     * Returns the first non-empty stripe starting from the current one, and makes it current.
+     */
+    private MpscRingBuffer<E> currentStripe() {
+        for (int i = 0; i < stripes.length; i++) {
+            int index = (current + i) & mask;
+            if (stripes[index].peek() != null) {
+                current = index;
+                return stripes[index];
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (MpscRingBuffer<E> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return stripes[0].capacity() * stripes.length;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import static com.brsanthu.googleanalytics.internal.GaUtils.isEmpty;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import com.brsanthu.googleanalytics.GoogleAnalytics;
+import com.brsanthu.googleanalytics.GoogleAnalyticsConfig;
+import com.brsanthu.googleanalytics.GoogleAnalyticsExecutor;
+import com.brsanthu.googleanalytics.GoogleAnalyticsStats;
+import com.brsanthu.googleanalytics.ShutdownReport;
+import com.brsanthu.googleanalytics.request.DefaultRequest;
+import com.brsanthu.googleanalytics.request.EventHit;
+import com.brsanthu.googleanalytics.request.ExceptionHit;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsRequest;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+import com.brsanthu.googleanalytics.request.ItemHit;
+import com.brsanthu.googleanalytics.request.PageViewHit;
+import com.brsanthu.googleanalytics.request.ScreenViewHit;
+import com.brsanthu.googleanalytics.request.SocialHit;
+import com.brsanthu.googleanalytics.request.TimingHit;
+import com.brsanthu.googleanalytics.request.TransactionHit;
+
+/**
+ * View of a {@link GoogleAnalytics} instance for one tenant (usually one tracking id). Hits created by the view get
+ * the values of the tenant's {@link DefaultRequest} for the parameters, custom dimensions and custom metrics they don't
+ * set themselves, and are then handed to the shared instance, which applies its own defaults on top. So all tenants
+ * share the same executor, http connections and batches (a batch can have hits of different tracking ids).
+ * <p>
+ * Views hold no resources. Closing a view does nothing, the shared instance must be closed instead. Stats, config
+ * and {@link #flush()} are those of the shared instance, for all tenants. Resetting the stats from a view does nothing,
+ * as it would reset them for every tenant.
+ *
+ * @author Santhosh Kumar
+ */
+public class TenantGoogleAnalytics implements GoogleAnalytics, GoogleAnalyticsExecutor {
+    private final GoogleAnalytics engine;
+    private final GoogleAnalyticsExecutor parentExecutor;
+    private final DefaultRequest tenantRequest;
+
+    public TenantGoogleAnalytics(GoogleAnalytics engine, GoogleAnalyticsExecutor parentExecutor, DefaultRequest tenantRequest) {
+        this.engine = engine;
+        this.parentExecutor = parentExecutor;
+        this.tenantRequest = tenantRequest;
+    }
+
+    public DefaultRequest getTenantRequest() {
+        return tenantRequest;
+    }
+
+    @Override
+    public GoogleAnalyticsResponse post(GoogleAnalyticsRequest<?> request) {
+        return parentExecutor.post(applyTenantRequest(request));
+    }
+
+    @Override
+    public Future<GoogleAnalyticsResponse> postAsync(GoogleAnalyticsRequest<?> request) {
+        return parentExecutor.postAsync(applyTenantRequest(request));
+    }
+
+    @Override
+    public void fire(GoogleAnalyticsRequest<?> request) {
+        parentExecutor.fire(applyTenantRequest(request));
+    }
+
+    @Override
+    public CompletableFuture<GoogleAnalyticsResponse> postCompletable(GoogleAnalyticsRequest<?> request) {
+        return parentExecutor.postCompletable(applyTenantRequest(request));
+    }
+
+    protected GoogleAnalyticsRequest<?> applyTenantRequest(GoogleAnalyticsRequest<?> request) {
+        Map<GoogleAnalyticsParameter, String> requestParms = request.getParameters();
+        tenantRequest.getParameters().forEach((parm, value) -> {
+            if (isEmpty(requestParms.get(parm)) && !isEmpty(value)) {
+                requestParms.put(parm, value);
+            }
+        });
+
+        tenantRequest.customDimensions().forEach(request.customDimensions()::putIfAbsent);
+        tenantRequest.custommMetrics().forEach(request.custommMetrics()::putIfAbsent);
+
+        return request;
+    }
+
+    @Override
+    public GoogleAnalytics tenant(DefaultRequest tenantRequest) {
+        return new TenantGoogleAnalytics(engine, this, tenantRequest);
+    }
+
+    @Override
+    public EventHit event() {
+        return (EventHit) new EventHit().setExecutor(this);
+    }
+
+    @Override
+    public ExceptionHit exception() {
+        return (ExceptionHit) new ExceptionHit().setExecutor(this);
+    }
+
+    @Override
+    public ItemHit item() {
+        return (ItemHit) new ItemHit().setExecutor(this);
+    }
+
+    @Override
+    public PageViewHit pageView() {
+        return (PageViewHit) new PageViewHit().setExecutor(this);
+    }
+
+    @Override
+    public PageViewHit pageView(String url, String title) {
+        return pageView().documentUrl(url).documentTitle(title);
+    }
+
+    @Override
+    public PageViewHit pageView(String url, String title, String description) {
+        return pageView(url, title).contentDescription(description);
+    }
+
+    @Override
+    public ScreenViewHit screenView() {
+        return (ScreenViewHit) new ScreenViewHit().setExecutor(this);
+    }
+
+    @Override
+    public ScreenViewHit screenView(String appName, String screenName) {
+        return screenView().applicationName(appName).screenName(screenName);
+    }
+
+    @Override
+    public SocialHit social() {
+        return (SocialHit) new SocialHit().setExecutor(this);
+    }
+
+    @Override
+    public SocialHit social(String socialNetwork, String socialAction, String socialTarget) {
+        return social().socialNetwork(socialNetwork).socialAction(socialAction).socialActionTarget(socialTarget);
+    }
+
+    @Override
+    public TimingHit timing() {
+        return (TimingHit) new TimingHit().setExecutor(this);
+    }
+
+    @Override
+    public TransactionHit transaction() {
+        return (TransactionHit) new TransactionHit().setExecutor(this);
+    }
+
+    @Override
+    public GoogleAnalyticsStats getStats() {
+        return engine.getStats();
+    }
+
+    @Override
+    public GoogleAnalyticsConfig getConfig() {
+        return engine.getConfig();
+    }
+
+    @Override
+    public void ifEnabled(Runnable runnable) {
+        engine.ifEnabled(runnable);
+    }
+
+    /**
+     * Does nothing, stats are shared by all tenants and can only be reset on the shared instance.
+     */
+    @Override
+    public void resetStats() {
+        // Stats belong to the shared instance
+    }
+
+    /**
+     * Flushes the batches of the shared instance, which carry the hits of all tenants.
+     */
+    @Override
+    public void flush() {
+        engine.flush();
+    }
+
+    @Override
+    public void close() {
+        // Resources belong to the shared instance
+    }
+
+    @Override
+    public ShutdownReport close(Duration timeout) {
+        return new ShutdownReport(0, 0, 0, 0);
+    }
+}
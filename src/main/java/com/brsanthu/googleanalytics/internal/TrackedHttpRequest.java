@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.brsanthu.googleanalytics.GoogleAnalyticsException;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+
+/**
+ * Batched hit whose sender is waiting for it to be delivered. Completion travels with the hit through the batch queue
+ * and the sender stage, so hits posted without waiting for the delivery don't carry anything extra.
+ *
+ * @author Santhosh Kumar
+ */
+public class TrackedHttpRequest extends HttpRequest {
+    private final CompletableFuture<GoogleAnalyticsResponse> completion = new CompletableFuture<>();
+
+    public TrackedHttpRequest(String url) {
+        super(url);
+    }
+
+    public CompletableFuture<GoogleAnalyticsResponse> getCompletion() {
+        return completion;
+    }
+
+    public void delivered(int statusCode) {
+        GoogleAnalyticsResponse response = new GoogleAnalyticsResponse();
+        response.setStatusCode(statusCode);
+        response.setRequestParams(getBodyParams());
+        completion.complete(response);
+    }
+
+    public void failed(String reason, Throwable cause) {
+        completion.completeExceptionally(new GoogleAnalyticsException(reason, cause));
+    }
+
+    /**
+     * Completes the future of given hit if it is tracked, nothing otherwise.
+     */
+    public static void delivered(HttpRequest httpReq, int statusCode) {
+        if (httpReq instanceof TrackedHttpRequest) {
+            ((TrackedHttpRequest) httpReq).delivered(statusCode);
+        }
+    }
+
+    /**
+     * Fails the future of given hit if it is tracked, nothing otherwise.
+     */
+    public static void failed(HttpRequest httpReq, String reason, Throwable cause) {
+        if (httpReq instanceof TrackedHttpRequest) {
+            ((TrackedHttpRequest) httpReq).failed(reason, cause);
+        }
+    }
+}
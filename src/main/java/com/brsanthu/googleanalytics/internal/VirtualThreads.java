@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.brsanthu.googleanalytics.internal;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads. This is the version used on Java versions before 21, which don't have them. Java 21
+ * version of this class is in <code>src/main/java21</code> and is packaged in <code>META-INF/versions/21</code> of
+ * the multi-release jar.
+ *
+ * @author Santhosh Kumar
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates the executor which runs each task in a new virtual thread, named with given prefix.
+     *
+     * @return <code>null</code>, as virtual threads need Java 21 or later.
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        return null;
+    }
+}
@@ -54,6 +54,7 @@ import static com.brsanthu.googleanalytics.request.GoogleAnalyticsParameter.VIEW
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
@@ -1868,6 +1869,25 @@ public class GoogleAnalyticsRequest<T> {
         return execute(() -> delegateExecutor.postAsync(this));
     }
 
+    /**
+     * Sends the request asynchronously and forgets about it. Unlike {@link #sendAsync()}, no response is built for the
+     * hit, so nothing stays referenced after the hit is sent.
+     */
+    public void fire() {
+        execute(() -> {
+            delegateExecutor.fire(this);
+            return null;
+        });
+    }
+
+    /**
+     * Sends the request asynchronously. Unlike {@link #sendAsync()}, returned future completes only when the hit is
+     * delivered to Google Analytics (even when batching is enabled) and completes exceptionally if hit is dropped.
+     */
+    public CompletableFuture<GoogleAnalyticsResponse> sendCompletable() {
+        return execute(() -> delegateExecutor.postCompletable(this));
+    }
+
     private <E> E execute(Supplier<E> call) {
         if (delegateExecutor == null) {
             throw new RuntimeException("GoogleAnalyticsExecutor is null");
@@ -0,0 +1,59 @@
+package com.brsanthu.googleanalytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.internal.AdaptiveBatchController;
+
+public class AdaptiveBatchControllerTest {
+
+    @Test
+    public void testGrowsOnBacklog() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(20, 100);
+        controller.onLingerFlush(2);
+        assertEquals(11, controller.getBatchSize());
+
+        IntStream.range(0, 50).forEach(i -> {
+            controller.onBatchSent(10, TimeUnit.MILLISECONDS, true);
+            controller.onQueueDepth(500);
+        });
+        assertEquals(20, controller.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksOnLowTraffic() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(20, 100);
+        IntStream.range(0, 10).forEach(i -> controller.onLingerFlush(1));
+        assertEquals(1, controller.getBatchSize());
+    }
+
+    @Test
+    public void testBacksOffOnErrors() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(20, 100);
+        assertEquals(25, controller.getLingerMillis());
+
+        controller.onBatchSent(10, TimeUnit.MILLISECONDS, false);
+        assertEquals(10, controller.getBatchSize());
+
+        IntStream.range(0, 20).forEach(i -> controller.onBatchSent(10, TimeUnit.MILLISECONDS, false));
+        assertEquals(1, controller.getBatchSize());
+        assertTrue(controller.getLingerMillis() > 90);
+
+        // No growth while errors are frequent
+        controller.onQueueDepth(500);
+        assertEquals(1, controller.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksOnSlowSends() throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController(20, 100);
+        controller.onBatchSent(10, TimeUnit.MILLISECONDS, true);
+        IntStream.range(0, 10).forEach(i -> controller.onBatchSent(100, TimeUnit.MILLISECONDS, true));
+        assertTrue(controller.getBatchSize() < 20);
+    }
+}
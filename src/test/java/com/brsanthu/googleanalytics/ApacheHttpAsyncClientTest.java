@@ -0,0 +1,134 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.ApacheHttpAsyncClientImpl;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+import com.sun.net.httpserver.HttpServer;
+
+public class ApacheHttpAsyncClientTest {
+
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    private volatile long responseDelayMillis = 0;
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setup() throws Exception {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            bodies.add(read(exchange.getRequestBody()));
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void teardown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpRequest hit(String url, String action) {
+        return new HttpRequest(url + "/collect").post().addBodyParam("t", "event").addBodyParam("ea", action);
+    }
+
+    @Test
+    public void testPostAndBatch() throws Exception {
+        try (ApacheHttpAsyncClientImpl client = new ApacheHttpAsyncClientImpl(new GoogleAnalyticsConfig())) {
+            assertEquals(200, client.post(hit(url, "single")).getStatusCode());
+            assertEquals("t=event&ea=single", bodies.get(0));
+
+            List<HttpRequest> batch = new ArrayList<>();
+            batch.add(hit(url, "first"));
+            batch.add(hit(url, "second"));
+            assertEquals(200, client.postBatch(new HttpBatchRequest().setUrl(url + "/batch").setRequests(batch)).getStatusCode());
+            assertEquals("t=event&ea=first\r\nt=event&ea=second\r\n", bodies.get(1));
+        }
+    }
+
+    @Test
+    public void testManyRequestsInFlight() throws Exception {
+        responseDelayMillis = 200;
+        GoogleAnalyticsConfig config = new GoogleAnalyticsConfig().setHttpIoThreads(1).setMaxHttpConnectionsPerRoute(50);
+
+        try (ApacheHttpAsyncClientImpl client = new ApacheHttpAsyncClientImpl(config)) {
+            long start = System.nanoTime();
+            List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(client.postAsync(hit(url, "hit-" + i)));
+            }
+
+            for (CompletableFuture<HttpResponse> future : futures) {
+                assertEquals(200, future.get().getStatusCode());
+            }
+
+            // Sent one by one, they would take 10 seconds
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(50, bodies.size());
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        server.stop(0);
+
+        try (ApacheHttpAsyncClientImpl client = new ApacheHttpAsyncClientImpl(new GoogleAnalyticsConfig().setHttpConnectTimeoutMillis(1000))) {
+            assertEquals(0, client.postAsync(hit(url, "failed")).get().getStatusCode());
+        }
+    }
+
+    @Test
+    public void testSelectedByConfig() throws Exception {
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withConfig(new GoogleAnalyticsConfig()
+                .setAsyncHttpClientEnabled(true).setUseHttps(false).setHttpUrl(url + "/collect").setDiscoverRequestParameters(false)).build();
+
+        try {
+            assertEquals(200, ga.event().eventAction("configured").send().getStatusCode());
+            assertTrue(bodies.get(0).contains("ea=configured"));
+        } finally {
+            ga.close();
+        }
+    }
+}
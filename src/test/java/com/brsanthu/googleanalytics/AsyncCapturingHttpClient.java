@@ -0,0 +1,22 @@
+package com.brsanthu.googleanalytics;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.brsanthu.googleanalytics.httpclient.AsyncHttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+public class AsyncCapturingHttpClient extends CapturingHttpClient implements AsyncHttpClient {
+
+    @Override
+    public CompletableFuture<HttpResponse> postAsync(HttpRequest req) {
+        return CompletableFuture.completedFuture(post(req));
+    }
+
+    @Override
+    public CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req) {
+        return CompletableFuture.completedFuture(postBatch(req));
+    }
+}
@@ -0,0 +1,52 @@
+package com.brsanthu.googleanalytics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpClient;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+/**
+ * In memory http client which records the requests instead of sending them, so tests don't depend on network.
+ */
+public class CapturingHttpClient implements HttpClient {
+    private final List<HttpRequest> requests = new ArrayList<>();
+    private final List<HttpBatchRequest> batches = new ArrayList<>();
+
+    @Override
+    public synchronized HttpResponse post(HttpRequest req) {
+        requests.add(req);
+        return new HttpResponse().setStatusCode(200);
+    }
+
+    @Override
+    public boolean isBatchSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized HttpBatchResponse postBatch(HttpBatchRequest req) {
+        batches.add(new HttpBatchRequest().setUrl(req.getUrl()).setRequests(new ArrayList<>(req.getRequests())));
+        return new HttpBatchResponse().setStatusCode(200);
+    }
+
+    public synchronized List<HttpRequest> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    public synchronized List<HttpBatchRequest> getBatches() {
+        return new ArrayList<>(batches);
+    }
+
+    public synchronized int getBatchedHits() {
+        return batches.stream().mapToInt(b -> b.getRequests().size()).sum();
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+}
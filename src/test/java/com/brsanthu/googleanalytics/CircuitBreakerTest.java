@@ -0,0 +1,174 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+import com.brsanthu.googleanalytics.internal.CircuitBreakerHttpClient;
+import com.brsanthu.googleanalytics.internal.CircuitBreakerHttpClient.State;
+import com.brsanthu.googleanalytics.internal.GoogleAnalyticsStatsImpl;
+
+public class CircuitBreakerTest {
+
+    /**
+     * Responds with the status set by the test.
+     */
+    private static class SwitchableHttpClient extends CapturingHttpClient {
+        private volatile int status = 200;
+
+        @Override
+        public synchronized HttpResponse post(HttpRequest req) {
+            super.post(req);
+            return new HttpResponse().setStatusCode(status);
+        }
+    }
+
+    @Test
+    public void testOpensAndRecovers() throws Exception {
+        SwitchableHttpClient client = new SwitchableHttpClient();
+        GoogleAnalyticsStatsImpl stats = new GoogleAnalyticsStatsImpl();
+        CircuitBreakerHttpClient breaker = new CircuitBreakerHttpClient(client,
+                new GoogleAnalyticsConfig().setCircuitBreakerFailureThreshold(3).setCircuitBreakerOpenMillis(50), () -> stats);
+
+        client.status = 503;
+        for (int i = 0; i < 3; i++) {
+            breaker.post(new HttpRequest("url"));
+        }
+        assertEquals(State.OPEN, breaker.getState());
+
+        // Fails fast without sending
+        assertEquals(0, breaker.post(new HttpRequest("url")).getStatusCode());
+        assertEquals(3, client.getRequests().size());
+        assertEquals(1, stats.getCircuitOpenRejections());
+
+        // Failed probe opens it again
+        Thread.sleep(60);
+        breaker.post(new HttpRequest("url"));
+        assertEquals(4, client.getRequests().size());
+        assertEquals(State.OPEN, breaker.getState());
+
+        // Successful probe closes it
+        client.status = 200;
+        Thread.sleep(60);
+        assertEquals(200, breaker.post(new HttpRequest("url")).getStatusCode());
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(200, breaker.post(new HttpRequest("url")).getStatusCode());
+        assertEquals(6, client.getRequests().size());
+    }
+
+    /**
+     * Fails each request (or succeeds if its url starts with <code>ok</code>) once the test releases it.
+     */
+    private static class LatchedHttpClient extends CapturingHttpClient {
+        private final Map<String, CountDownLatch> releases = new ConcurrentHashMap<>();
+        private final CountDownLatch entered;
+
+        LatchedHttpClient(int requests) {
+            entered = new CountDownLatch(requests);
+        }
+
+        @Override
+        public HttpResponse post(HttpRequest req) {
+            super.post(req);
+            entered.countDown();
+            try {
+                release(req.getUrl()).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new HttpResponse().setStatusCode(req.getUrl().startsWith("ok") ? 200 : 503);
+        }
+
+        CountDownLatch release(String url) {
+            return releases.computeIfAbsent(url, k -> new CountDownLatch(1));
+        }
+    }
+
+    @Test
+    public void testLateFailureDoesNotRestartOpenPeriod() throws Exception {
+        LatchedHttpClient client = new LatchedHttpClient(2);
+        GoogleAnalyticsStatsImpl stats = new GoogleAnalyticsStatsImpl();
+        CircuitBreakerHttpClient breaker = new CircuitBreakerHttpClient(client,
+                new GoogleAnalyticsConfig().setCircuitBreakerFailureThreshold(1).setCircuitBreakerOpenMillis(50), () -> stats);
+
+        // Both requests go through while the circuit is closed
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> first = executor.submit(() -> breaker.post(new HttpRequest("first")));
+        Future<?> second = executor.submit(() -> breaker.post(new HttpRequest("second")));
+        assertTrue(client.entered.await(5, TimeUnit.SECONDS));
+
+        client.release("first").countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(State.OPEN, breaker.getState());
+
+        // Second one fails after the open period is over, while the circuit is about to turn half-open
+        Thread.sleep(60);
+        client.release("second").countDown();
+        second.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Open period is not restarted, so the next request probes
+        client.release("probe").countDown();
+        breaker.post(new HttpRequest("probe"));
+        assertEquals(3, client.getRequests().size());
+        assertEquals(0, stats.getCircuitOpenRejections());
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testLateSuccessDoesNotCloseCircuit() throws Exception {
+        LatchedHttpClient client = new LatchedHttpClient(2);
+        GoogleAnalyticsStatsImpl stats = new GoogleAnalyticsStatsImpl();
+        CircuitBreakerHttpClient breaker = new CircuitBreakerHttpClient(client,
+                new GoogleAnalyticsConfig().setCircuitBreakerFailureThreshold(1).setCircuitBreakerOpenMillis(60000), () -> stats);
+
+        // Both requests go through while the circuit is closed
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> late = executor.submit(() -> breaker.post(new HttpRequest("ok-late")));
+        Future<?> failed = executor.submit(() -> breaker.post(new HttpRequest("failed")));
+        assertTrue(client.entered.await(5, TimeUnit.SECONDS));
+
+        client.release("failed").countDown();
+        failed.get(5, TimeUnit.SECONDS);
+        assertEquals(State.OPEN, breaker.getState());
+
+        // Success of the request sent before the circuit opened leaves it open
+        client.release("ok-late").countDown();
+        late.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(0, breaker.post(new HttpRequest("ok")).getStatusCode());
+        assertEquals(1, stats.getCircuitOpenRejections());
+    }
+
+    @Test
+    public void testCountsFailuresAfterRetries() throws Exception {
+        SwitchableHttpClient client = new SwitchableHttpClient();
+        client.status = 500;
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setMaxRetries(1).setRetryInitialBackoffMillis(1).setCircuitBreakerEnabled(true)
+                        .setCircuitBreakerFailureThreshold(2))
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            ga.pageView().send();
+        }
+
+        // Two hits with a retry each, rest are not sent
+        assertEquals(4, client.getRequests().size());
+        assertEquals(3, ga.getStats().getCircuitOpenRejections());
+        ga.close();
+    }
+}
@@ -1,12 +1,36 @@
 package com.brsanthu.googleanalytics;
 
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_HIT_BYTES;
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_QUEUE_TIME_MILLIS;
 import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+import com.brsanthu.googleanalytics.request.DefaultRequest;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+
 public class GoogleAnalyticsBatchTest {
 
     private static GoogleAnalytics ga = null;
@@ -23,4 +47,406 @@ public class GoogleAnalyticsBatchTest {
             ga.pageView("http://www.google.com", "Search").send();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLingerFlush() throws Exception {
+        CountDownLatch posted = new CountDownLatch(1);
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public synchronized HttpBatchResponse postBatch(HttpBatchRequest req) {
+                HttpBatchResponse resp = super.postBatch(req);
+                posted.countDown();
+                return resp;
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setMaxBatchDelayMillis(100)).build();
+
+        lga.pageView("http://www.google.com", "Search").send();
+        lga.pageView("http://www.google.com", "Search").send();
+        assertEquals(0, client.getBatches().size());
+
+        // Nothing flushes the batch but the delay
+        assertTrue(posted.await(10, TimeUnit.SECONDS));
+        assertEquals(1, client.getBatches().size());
+        assertEquals(2, client.getBatchedHits());
+
+        lga.close();
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        testConcurrentProducers(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20));
+    }
+
+    @Test
+    public void testConcurrentProducersStriped() throws Exception {
+        testConcurrentProducers(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setBatchQueueStripes(8));
+    }
+
+    @Test
+    public void testConcurrentProducersAdaptive() throws Exception {
+        testConcurrentProducers(new GoogleAnalyticsConfig().setBatchingEnabled(true).setAdaptiveBatchingEnabled(true).setMaxBatchDelayMillis(20));
+    }
+
+    private void testConcurrentProducers(GoogleAnalyticsConfig config) throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client).withConfig(config).build();
+
+        IntStream.range(0, 1000).parallel().forEach(i -> lga.pageView("http://www.google.com", "Search").send());
+        lga.flush();
+
+        assertEquals(1000, client.getBatchedHits());
+        assertEquals(0, lga.getStats().getDroppedHits());
+        lga.close();
+    }
+
+    @Test
+    public void testSendsOffCallerThread() throws Exception {
+        Set<String> senderThreads = ConcurrentHashMap.newKeySet();
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public HttpBatchResponse postBatch(HttpBatchRequest req) {
+                senderThreads.add(Thread.currentThread().getName());
+                return super.postBatch(req);
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(5)).build();
+
+        IntStream.range(0, 12).forEach(i -> lga.pageView("http://www.google.com", "Search").send());
+        lga.flush();
+
+        assertEquals(12, client.getBatchedHits());
+        assertEquals(3, client.getBatches().size());
+        assertFalse(senderThreads.contains(Thread.currentThread().getName()));
+        lga.close();
+    }
+
+    @Test
+    public void testBatchPayloadLimits() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(50)).build();
+
+        // Each of these is ~3 KB, so only 5 fit in a 16 KB batch
+        String largeTitle = String.join("", Collections.nCopies(3000, "a"));
+        IntStream.range(0, 12).forEach(i -> lga.pageView("http://www.google.com", largeTitle).send());
+
+        // Over 8 KB limit per hit
+        lga.pageView("http://www.google.com", String.join("", Collections.nCopies(9000, "a"))).send();
+
+        lga.flush();
+
+        assertEquals(12, client.getBatchedHits());
+        assertEquals(1, lga.getStats().getOversizedHits());
+        for (HttpBatchRequest batch : client.getBatches()) {
+            int payload = batch.getRequests().stream().mapToInt(r -> r.getEncodedBody().length() + 2).sum();
+            assertTrue(batch.getRequests().size() <= 20);
+            assertTrue(payload <= 16 * 1024);
+        }
+        lga.close();
+    }
+
+    @Test
+    public void testMultipleBatchesInFlight() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        CountDownLatch inFlight = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public HttpBatchResponse postBatch(HttpBatchRequest req) {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                inFlight.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                concurrent.decrementAndGet();
+                return super.postBatch(req);
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(10).setMaxInFlightBatches(4)).build();
+
+        IntStream.range(0, 40).forEach(i -> lga.pageView("http://www.google.com", "Search").send());
+        assertTrue(inFlight.await(10, TimeUnit.SECONDS));
+        assertEquals(4, lga.getStats().getInFlightBatches());
+
+        release.countDown();
+        lga.flush();
+        assertEquals(40, client.getBatchedHits());
+        assertEquals(4, maxConcurrent.get());
+        assertEquals(0, lga.getStats().getInFlightBatches());
+        lga.close();
+    }
+
+    @Test
+    public void testAsyncBatchesInFlight() throws Exception {
+        BlockingQueue<CompletableFuture<HttpBatchResponse>> pending = new LinkedBlockingQueue<>();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        AsyncCapturingHttpClient client = new AsyncCapturingHttpClient() {
+            @Override
+            public CompletableFuture<HttpBatchResponse> postBatchAsync(HttpBatchRequest req) {
+                threads.add(Thread.currentThread());
+                CompletableFuture<HttpBatchResponse> future = new CompletableFuture<>();
+                pending.add(future);
+                return future.thenApply(resp -> postBatch(req));
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(10).setMaxInFlightBatches(4)
+                        .setMaxRetries(1).setCircuitBreakerEnabled(true))
+                .build();
+
+        IntStream.range(0, 80).forEach(i -> lga.pageView("http://www.google.com", "Search").send());
+
+        // All four batches go out from the single sender thread without waiting for their responses
+        List<CompletableFuture<HttpBatchResponse>> inFlight = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            inFlight.add(pending.poll(10, TimeUnit.SECONDS));
+        }
+        assertEquals(4, lga.getStats().getInFlightBatches());
+        assertEquals(1, threads.size());
+        assertTrue(pending.isEmpty());
+
+        // Fifth batch goes out only when one of them completes
+        inFlight.get(0).complete(new HttpBatchResponse().setStatusCode(200));
+        CompletableFuture<HttpBatchResponse> next = pending.poll(10, TimeUnit.SECONDS);
+        assertTrue(next != null);
+        next.complete(new HttpBatchResponse().setStatusCode(200));
+
+        Thread completer = new Thread(() -> {
+            try {
+                while (true) {
+                    pending.take().complete(new HttpBatchResponse().setStatusCode(200));
+                }
+            } catch (InterruptedException e) {
+                // done
+            }
+        });
+        completer.setDaemon(true);
+        completer.start();
+        inFlight.forEach(f -> f.complete(new HttpBatchResponse().setStatusCode(200)));
+
+        lga.flush();
+        assertEquals(80, client.getBatchedHits());
+        assertEquals(80, lga.getStats().getDeliveredHits());
+        assertEquals(0, lga.getStats().getInFlightBatches());
+        lga.close();
+        completer.interrupt();
+    }
+
+    @Test
+    public void testAsyncPipeline() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setAsyncPipelineEnabled(true).setAsyncPipelineSize(64)
+                        .setOverloadPolicy(OverloadPolicy.CALLER_RUNS))
+                .build();
+
+        IntStream.range(0, 1000).parallel().forEach(i -> lga.pageView("http://www.google.com", "Search").sendAsync());
+        lga.close();
+
+        assertEquals(1000, client.getBatchedHits());
+        assertEquals(0, lga.getStats().getDroppedHits());
+    }
+
+    @Test
+    public void testAsyncPipelineFuture() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setAsyncPipelineEnabled(true)).build();
+
+        Future<GoogleAnalyticsResponse> future = lga.pageView("http://www.google.com", "Search").sendAsync();
+        assertEquals("Search", future.get(5, TimeUnit.SECONDS).getRequestParams().get("dt"));
+        lga.close();
+        assertEquals(1, client.getBatchedHits());
+    }
+
+    @Test
+    public void testAsyncPipelineEncoderDoesNotPost() throws Exception {
+        Set<String> postingThreads = ConcurrentHashMap.newKeySet();
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public synchronized HttpResponse post(HttpRequest req) {
+                postingThreads.add(Thread.currentThread().getName());
+                return super.post(req);
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setAsyncPipelineEnabled(true).setMaxBatchDelayMillis(60000)
+                        .setMaxBufferedBytes(2000).setOverloadPolicy(OverloadPolicy.CALLER_RUNS))
+                .build();
+
+        List<Future<GoogleAnalyticsResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(lga.pageView("http://www.google.com", "Search").sendAsync());
+        }
+        for (Future<GoogleAnalyticsResponse> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        // Budget is used up, but the encoder drops the oldest hits rather than posting them itself
+        assertTrue(postingThreads.toString(), postingThreads.stream().noneMatch(name -> name.contains("encoder")));
+        assertEquals(0, lga.getStats().getOverloadCallerRunsHits());
+        assertTrue(lga.getStats().getOverloadDroppedOldestHits() > 0);
+        lga.close();
+    }
+
+    @Test
+    public void testCompletableCompletesOnDelivery() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(5)).build();
+
+        CompletableFuture<GoogleAnalyticsResponse> future = lga.pageView("http://www.google.com", "Search").sendCompletable();
+        assertFalse(future.isDone());
+
+        lga.flush();
+        assertEquals(200, future.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertEquals("Search", future.get().getRequestParams().get("dt"));
+        lga.close();
+    }
+
+    @Test
+    public void testCompletableFailsOnRejectedBatch() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public HttpBatchResponse postBatch(HttpBatchRequest req) {
+                super.postBatch(req);
+                return new HttpBatchResponse().setStatusCode(500);
+            }
+        };
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(5)).build();
+
+        CompletableFuture<GoogleAnalyticsResponse> future = lga.pageView("http://www.google.com", "Search").sendCompletable();
+        lga.close();
+
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testCompletableFailsOnDrop() throws Exception {
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(new CapturingHttpClient())
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true)).build();
+
+        StringBuilder longTitle = new StringBuilder();
+        IntStream.range(0, MAX_HIT_BYTES).forEach(i -> longTitle.append('x'));
+
+        CompletableFuture<GoogleAnalyticsResponse> future = lga.pageView("http://www.google.com", longTitle.toString()).sendCompletable();
+        assertTrue(future.isCompletedExceptionally());
+        lga.close();
+    }
+
+    @Test
+    public void testFire() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setGatherStats(true)).build();
+
+        IntStream.range(0, 25).forEach(i -> lga.event().eventCategory("test").fire());
+        lga.flush();
+
+        assertEquals(25, client.getBatchedHits());
+        assertEquals(25, lga.getStats().getEventHits());
+        lga.close();
+    }
+
+    @Test
+    public void testTenants() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true)).build();
+
+        GoogleAnalytics tenant1 = lga.tenant("UA-1111-1");
+        GoogleAnalytics tenant2 = lga.tenant(new DefaultRequest().clientId(null).trackingId("UA-2222-2").customDimension(1, "tenant2"));
+
+        lga.pageView().send();
+        tenant1.pageView().send();
+        tenant2.event().send();
+        tenant2.event().trackingId("UA-3333-3").send();
+        lga.flush();
+
+        assertEquals(1, client.getBatches().size());
+        List<HttpRequest> hits = client.getBatches().get(0).getRequests();
+        assertEquals(TEST_TRACKING_ID, hits.get(0).getBodyParams().get("tid"));
+        assertEquals("UA-1111-1", hits.get(1).getBodyParams().get("tid"));
+        assertEquals("UA-2222-2", hits.get(2).getBodyParams().get("tid"));
+        assertEquals("tenant2", hits.get(2).getBodyParams().get("cd1"));
+        assertEquals("UA-3333-3", hits.get(3).getBodyParams().get("tid"));
+
+        // Same client id as the shared instance
+        assertEquals(hits.get(0).getBodyParams().get("cid"), hits.get(2).getBodyParams().get("cid"));
+
+        // Stats are shared by all tenants, so a view can't reset them
+        tenant1.resetStats();
+        assertEquals(4, tenant2.getStats().getSentHits());
+        lga.close();
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setSamplingRate(0.25)
+                        .setSamplingRate("exception", 1).setSamplingWeightMetricIndex(5))
+                .build();
+
+        int clients = 400;
+        for (int i = 0; i < clients; i++) {
+            // Same client is either always sent or never
+            lga.pageView().clientId("client-" + i).send();
+            lga.event().clientId("client-" + i).send();
+            lga.exception().clientId("client-" + i).send();
+        }
+        lga.flush();
+
+        Set<String> pageViewClients = ConcurrentHashMap.newKeySet();
+        Set<String> eventClients = ConcurrentHashMap.newKeySet();
+        int exceptions = 0;
+        for (HttpBatchRequest batch : client.getBatches()) {
+            for (HttpRequest hit : batch.getRequests()) {
+                String type = hit.getBodyParams().get("t");
+                if ("exception".equals(type)) {
+                    exceptions++;
+                    continue;
+                }
+                assertEquals("4", hit.getBodyParams().get("cm5"));
+                ("pageview".equals(type) ? pageViewClients : eventClients).add(hit.getBodyParams().get("cid"));
+            }
+        }
+
+        assertEquals(clients, exceptions);
+        assertEquals(pageViewClients, eventClients);
+        assertTrue(pageViewClients.size() > clients / 8 && pageViewClients.size() < clients * 3 / 8);
+        assertEquals(2 * (clients - pageViewClients.size()), lga.getStats().getSampledOutHits());
+        lga.close();
+    }
+
+    @Test
+    public void testQueueTime() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics lga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setQueueTimeEnabled(true)).build();
+
+        lga.pageView().send();
+        lga.event().queueTime(1000).send();
+        CompletableFuture<GoogleAnalyticsResponse> expired = lga.event().queueTime((int) MAX_QUEUE_TIME_MILLIS).sendCompletable();
+        // Time spent in the queue, which is what qt is expected to cover
+        Thread.sleep(50);
+        lga.flush();
+
+        List<HttpRequest> hits = client.getBatches().get(0).getRequests();
+        assertEquals(2, hits.size());
+        assertTrue(Long.parseLong(hits.get(0).getBodyParams().get("qt")) >= 50);
+        assertTrue(Long.parseLong(hits.get(1).getBodyParams().get("qt")) >= 1050);
+
+        assertTrue(expired.isCompletedExceptionally());
+        assertEquals(1, lga.getStats().getExpiredHits());
+        lga.close();
+    }
+}
@@ -1,6 +1,8 @@
 package com.brsanthu.googleanalytics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -18,4 +20,13 @@ public class GoogleAnalyticsConfigTest {
         assertEquals(true, config.isDiscoverRequestParameters());
         assertEquals(false, config.isGatherStats());
     }
+
+    @Test
+    public void testToString() throws Exception {
+        String value = new GoogleAnalyticsConfig().setMaxBatchDelayMillis(250).setSpoolDirectory("/tmp/ga").setProxyPassword("secret").toString();
+        assertTrue(value.contains("maxBatchDelayMillis=250"));
+        assertTrue(value.contains("spoolDirectory=/tmp/ga"));
+        assertTrue(value.contains("circuitBreakerEnabled=false"));
+        assertFalse(value.contains("secret"));
+    }
 }
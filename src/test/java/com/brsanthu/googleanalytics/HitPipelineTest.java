@@ -0,0 +1,54 @@
+package com.brsanthu.googleanalytics;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.internal.HitPipeline;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsRequest;
+import com.brsanthu.googleanalytics.request.PageViewHit;
+
+public class HitPipelineTest {
+
+    // Waits until the encoder parks without a timeout, which it does only once it is idle for a while
+    private static boolean awaitSleeping(Thread encoder) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (encoder.getState() != Thread.State.WAITING) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    @Test(timeout = 30000)
+    public void testSleepsWhenIdle() throws Exception {
+        BlockingQueue<GoogleAnalyticsRequest<?>> encoded = new LinkedBlockingQueue<>();
+        Thread[] encoder = new Thread[1];
+        HitPipeline pipeline = new HitPipeline(16, r -> {
+            encoder[0] = new Thread(r);
+            encoder[0].setDaemon(true);
+            return encoder[0];
+        }, (request, enqueuedNanos, completion) -> encoded.add(request));
+
+        assertTrue(awaitSleeping(encoder[0]));
+
+        // Publishing wakes it up
+        PageViewHit hit = new PageViewHit();
+        assertTrue(pipeline.publish(hit, System.nanoTime()));
+        assertSame(hit, encoded.poll(10, TimeUnit.SECONDS));
+
+        // So does closing
+        assertTrue(awaitSleeping(encoder[0]));
+        pipeline.close();
+        assertFalse(encoder[0].isAlive());
+    }
+}
@@ -0,0 +1,155 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+
+public class HitSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GoogleAnalytics build(CapturingHttpClient client) {
+        return build(client, 10);
+    }
+
+    private GoogleAnalytics build(CapturingHttpClient client, int maxBatchDelayMillis) {
+        return build(client, new GoogleAnalyticsConfig().setQueueTimeEnabled(true).setMaxBatchDelayMillis(maxBatchDelayMillis));
+    }
+
+    private GoogleAnalytics build(CapturingHttpClient client, GoogleAnalyticsConfig config) {
+        return GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(config.setBatchingEnabled(true).setSpoolDirectory(folder.getRoot().getPath()).setSpoolSegmentBytes(64 * 1024))
+                .build();
+    }
+
+    @Test
+    public void testReplaysUnsentHits() throws Exception {
+        CapturingHttpClient firstClient = new CapturingHttpClient();
+
+        // Unsent hits are still queued when the instance is closed with no time to send them
+        GoogleAnalytics ga = build(firstClient, 60000);
+        ga.event().eventAction("sent").send();
+        ga.flush();
+        for (int i = 0; i < 3; i++) {
+            ga.event().eventAction("unsent").eventLabel("hit-" + i).send();
+        }
+        ga.close(Duration.ZERO);
+        assertEquals(1, firstClient.getBatchedHits());
+
+        CapturingHttpClient client = new CapturingHttpClient();
+        ga = build(client);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getBatchedHits() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ga.close();
+
+        List<HttpRequest> replayed = client.getBatches().stream().flatMap(b -> b.getRequests().stream()).collect(Collectors.toList());
+        assertEquals(3, replayed.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("unsent", replayed.get(i).getBodyParams().get("ea"));
+            assertEquals("hit-" + i, replayed.get(i).getBodyParams().get("el"));
+            assertTrue(replayed.get(i).getBodyParams().containsKey("qt"));
+        }
+
+        // Everything is sent, so only the empty segment of the last instance is left
+        assertEquals(1, spoolFiles().length);
+        CapturingHttpClient nextClient = new CapturingHttpClient();
+        ga = build(nextClient);
+        Thread.sleep(50);
+        ga.close();
+        assertEquals(0, nextClient.getBatchedHits());
+    }
+
+    @Test
+    public void testReplaysQueueTimeWithDefaults() throws Exception {
+        // Queue time is not enabled, so the hits are sent as they are until replayed
+        GoogleAnalytics ga = build(new CapturingHttpClient(), new GoogleAnalyticsConfig().setMaxBatchDelayMillis(60000));
+        ga.event().eventAction("unsent").send();
+        ga.event().eventAction("queued").queueTime(5000).send();
+        ga.close(Duration.ZERO);
+
+        CapturingHttpClient client = new CapturingHttpClient();
+        ga = build(client, new GoogleAnalyticsConfig().setMaxBatchDelayMillis(10));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getBatchedHits() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ga.close();
+
+        List<HttpRequest> replayed = client.getBatches().stream().flatMap(b -> b.getRequests().stream()).collect(Collectors.toList());
+        assertEquals(2, replayed.size());
+        assertEquals("unsent", replayed.get(0).getBodyParams().get("ea"));
+        assertTrue(replayed.get(0).getBodyParams().containsKey("qt"));
+        assertEquals("queued", replayed.get(1).getBodyParams().get("ea"));
+        assertTrue(Long.parseLong(replayed.get(1).getBodyParams().get("qt")) >= 5000);
+    }
+
+    @Test
+    public void testKeepsFailedHits() throws Exception {
+        CapturingHttpClient failingClient = new CapturingHttpClient() {
+            @Override
+            public synchronized HttpBatchResponse postBatch(HttpBatchRequest req) {
+                super.postBatch(req);
+                return new HttpBatchResponse().setStatusCode(500);
+            }
+        };
+
+        GoogleAnalytics ga = build(failingClient);
+        for (int i = 0; i < 3; i++) {
+            ga.pageView().documentTitle("failed-" + i).send();
+        }
+        ga.flush();
+        ga.close();
+        assertEquals(3, failingClient.getBatchedHits());
+
+        // Failed hits are still pending, so the next instance sends them
+        CapturingHttpClient client = new CapturingHttpClient();
+        ga = build(client);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getBatchedHits() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ga.close();
+
+        List<HttpRequest> replayed = client.getBatches().stream().flatMap(b -> b.getRequests().stream()).collect(Collectors.toList());
+        assertEquals(3, replayed.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("failed-" + i, replayed.get(i).getBodyParams().get("dt"));
+        }
+    }
+
+    @Test
+    public void testRollsSegments() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics ga = build(client);
+
+        for (int i = 0; i < 1000; i++) {
+            ga.pageView().documentTitle("Page " + i).send();
+        }
+        ga.flush();
+
+        assertEquals(1000, client.getBatchedHits());
+        // Full segments are deleted once all their hits are sent
+        assertEquals(1, spoolFiles().length);
+        ga.close();
+    }
+
+    private File[] spoolFiles() {
+        return folder.getRoot().listFiles((dir, name) -> name.endsWith(".spool"));
+    }
+}
@@ -0,0 +1,157 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.MAX_BATCH_BYTES;
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.internal.BufferBudget;
+import com.brsanthu.googleanalytics.internal.GoogleAnalyticsImpl;
+import com.brsanthu.googleanalytics.internal.MemoryPressureGuard;
+import com.brsanthu.googleanalytics.request.DefaultRequest;
+
+public class MemoryPressureTest {
+
+    private static MemoryPressureGuard guard(double threshold, AtomicBoolean overThreshold, Runnable onPressure, Runnable onRecovery) {
+        // Checks on every call, so the tests don't wait for the check interval
+        return new MemoryPressureGuard(threshold, 0, onPressure, onRecovery) {
+            @Override
+            protected boolean isOverThreshold() {
+                return overThreshold.get();
+            }
+        };
+    }
+
+    @Test
+    public void testPressureAndRecovery() throws Exception {
+        AtomicInteger pressures = new AtomicInteger();
+        AtomicInteger recoveries = new AtomicInteger();
+        AtomicBoolean overThreshold = new AtomicBoolean();
+
+        MemoryPressureGuard guard = guard(0.99, overThreshold, pressures::incrementAndGet, recoveries::incrementAndGet);
+        assertFalse(guard.isUnderPressure());
+        assertEquals(0, pressures.get());
+
+        overThreshold.set(true);
+        assertTrue(guard.isUnderPressure());
+        assertTrue(guard.isUnderPressure());
+        assertEquals(1, pressures.get());
+
+        overThreshold.set(false);
+        assertFalse(guard.isUnderPressure());
+        assertFalse(guard.isUnderPressure());
+        assertEquals(1, recoveries.get());
+    }
+
+    @Test
+    public void testChecksOncePerInterval() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        MemoryPressureGuard guard = new MemoryPressureGuard(0.99, 60000, () -> {}, () -> {}) {
+            @Override
+            protected boolean isOverThreshold() {
+                checks.incrementAndGet();
+                return true;
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(guard.isUnderPressure());
+        }
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    public void testShedsLowPriorityHits() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        AtomicBoolean overThreshold = new AtomicBoolean();
+        BufferBudget[] budgets = new BufferBudget[1];
+
+        GoogleAnalyticsConfig config = new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setMaxBufferedBytes(100000)
+                .setHitPriority("event", HitPriority.LOW).setMemoryPressureThreshold(0.99).setMemoryPressureBufferRatio(0.1);
+        GoogleAnalyticsImpl ga = new GoogleAnalyticsImpl(config, new DefaultRequest().trackingId(TEST_TRACKING_ID), client,
+                Executors.newSingleThreadExecutor()) {
+            @Override
+            protected MemoryPressureGuard createMemoryPressureGuard() {
+                budgets[0] = bufferBudget;
+                return guard(config.getMemoryPressureThreshold(), overThreshold, this::onMemoryPressure, bufferBudget::restore);
+            }
+        };
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                ga.event().eventAction("hit-" + i).send();
+            }
+            ga.pageView().documentTitle("queued").send();
+            assertTrue(client.getBatches().isEmpty());
+
+            // Next hit finds the heap under pressure, so queued low priority hits are dropped along with it and the rest
+            // are sent without waiting for a full batch
+            overThreshold.set(true);
+            ga.event().eventAction("shed").send();
+            assertEquals(4, ga.getStats().getMemoryPressureShedHits());
+            assertEquals(10000, budgets[0].getLimitBytes());
+            ga.pageView().documentTitle("pressure").send();
+
+            overThreshold.set(false);
+            ga.event().eventAction("recovered").send();
+            ga.flush();
+
+            assertEquals(4, ga.getStats().getMemoryPressureShedHits());
+            assertEquals(100000, budgets[0].getLimitBytes());
+            assertEquals(3, client.getBatchedHits());
+            assertEquals("queued", client.getBatches().get(0).getRequests().get(0).getBodyParams().get("dt"));
+        } finally {
+            ga.close();
+        }
+    }
+
+    @Test
+    public void testShedsNormalHitsWithDefaults() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        AtomicBoolean overThreshold = new AtomicBoolean();
+        BufferBudget[] budgets = new BufferBudget[1];
+
+        // No low priority hit types and no max buffered bytes
+        GoogleAnalyticsConfig config = new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setMemoryPressureThreshold(0.99);
+        GoogleAnalyticsImpl ga = new GoogleAnalyticsImpl(config, new DefaultRequest().trackingId(TEST_TRACKING_ID), client,
+                Executors.newSingleThreadExecutor()) {
+            @Override
+            protected MemoryPressureGuard createMemoryPressureGuard() {
+                budgets[0] = bufferBudget;
+                return guard(config.getMemoryPressureThreshold(), overThreshold, this::onMemoryPressure, bufferBudget::restore);
+            }
+        };
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                ga.pageView().documentTitle("queued-" + i).send();
+            }
+            assertFalse(budgets[0].isLimited());
+
+            overThreshold.set(true);
+            ga.transaction().txId("txn").send();
+
+            // Normal priority hits are shed, high priority ones still go and buffering is limited
+            assertEquals(3, ga.getStats().getMemoryPressureShedHits());
+            assertTrue(budgets[0].isLimited());
+            assertEquals(MAX_BATCH_BYTES, budgets[0].getLimitBytes());
+            ga.flush();
+            assertEquals(1, client.getBatchedHits());
+            assertEquals("transaction", client.getBatches().get(0).getRequests().get(0).getBodyParams().get("t"));
+
+            overThreshold.set(false);
+            ga.pageView().documentTitle("recovered").send();
+            assertFalse(budgets[0].isLimited());
+            assertEquals(3, ga.getStats().getMemoryPressureShedHits());
+        } finally {
+            ga.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.brsanthu.googleanalytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.internal.MpscRingBuffer;
+import com.brsanthu.googleanalytics.internal.PriorityLaneQueue;
+import com.brsanthu.googleanalytics.internal.StripedMpscQueue;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void testOfferAndPoll() throws Exception {
+        MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(3);
+        assertEquals(4, queue.capacity());
+        assertNull(queue.poll());
+
+        IntStream.range(0, 4).forEach(i -> assertTrue(queue.offer(i)));
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+
+        IntStream.range(1, 5).forEach(i -> assertEquals(Integer.valueOf(i), queue.poll()));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int producers = 8;
+        int perProducer = 10000;
+        MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(128);
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        start.countDown();
+        Set<Integer> received = new HashSet<>();
+        while (received.size() < producers * perProducer) {
+            Integer value = queue.poll();
+            if (value != null) {
+                assertTrue(received.add(value));
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testStripedQueue() throws Exception {
+        StripedMpscQueue<Integer> queue = new StripedMpscQueue<>(3, 16);
+        assertEquals(4, queue.getStripeCount());
+        assertEquals(16, queue.capacity());
+
+        // All stripes are usable from single thread once its own stripe is full
+        IntStream.range(0, 16).forEach(i -> assertTrue(queue.offer(i)));
+        assertFalse(queue.offer(16));
+
+        Set<Integer> received = new HashSet<>();
+        Integer value;
+        while ((value = queue.peek()) != null) {
+            assertEquals(value, queue.poll());
+            received.add(value);
+        }
+        assertEquals(16, received.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPriorityLanes() throws Exception {
+        PriorityLaneQueue<String> queue = new PriorityLaneQueue<>(p -> new MpscRingBuffer<>(p == HitPriority.LOW ? 2 : 16),
+                p -> p == HitPriority.HIGH ? 3 : 1);
+
+        assertTrue(queue.offer(HitPriority.LOW, "l1"));
+        assertTrue(queue.offer(HitPriority.LOW, "l2"));
+        assertFalse(queue.offer(HitPriority.LOW, "l3"));
+        IntStream.range(0, 8).forEach(i -> queue.offer(HitPriority.HIGH, "h" + i));
+        assertEquals(10, queue.size());
+
+        // High lane goes first, with 3/4 of the batch, then the rest to low lane
+        queue.startBatch(4);
+        List<String> batch = new ArrayList<>();
+        IntStream.range(0, 4).forEach(i -> batch.add(queue.poll()));
+        assertEquals("[h0, h1, h2, l1]", batch.toString());
+
+        // Peeked element is the one polled, even if a higher lane got an element since
+        queue.startBatch(4);
+        queue.poll();
+        queue.poll();
+        queue.poll();
+        assertEquals("l2", queue.peek());
+        queue.offer(HitPriority.HIGH, "h8");
+        assertEquals("l2", queue.poll());
+
+        // Room left by empty lanes goes to the others
+        queue.startBatch(10);
+        batch.clear();
+        String next;
+        while ((next = queue.poll()) != null) {
+            batch.add(next);
+        }
+        assertEquals("[h6, h7, h8]", batch.toString());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.internal.OffHeapHitQueue;
+import com.brsanthu.googleanalytics.internal.TrackedHttpRequest;
+
+public class OffHeapHitQueueTest {
+    private static final String URL = "http://localhost/collect";
+
+    private HttpRequest hit(int i) {
+        return new HttpRequest(URL).post().addBodyParam("t", "event").addBodyParam("ea", "hit-" + i).setSpoolPosition(i);
+    }
+
+    @Test
+    public void testOfferAndPoll() throws Exception {
+        OffHeapHitQueue queue = new OffHeapHitQueue(URL, 0, 1000);
+        assertNull(queue.poll());
+
+        long hitNanos = System.nanoTime();
+        assertTrue(queue.offer(hit(0).setHitNanos(hitNanos)));
+        TrackedHttpRequest tracked = new TrackedHttpRequest(URL);
+        assertTrue(queue.offer(tracked));
+        assertTrue(queue.offer(hit(2).addBodyParam("qt", "100")));
+        assertEquals(3, queue.size());
+
+        HttpRequest first = queue.peek();
+        assertSame(first, queue.poll());
+        assertEquals("hit-0", first.getBodyParams().get("ea"));
+        assertEquals(hitNanos, first.getHitNanos());
+        assertEquals(0, first.getSpoolPosition());
+        assertSame(tracked, queue.poll());
+
+        HttpRequest third = queue.poll();
+        assertEquals("t=event&ea=hit-2&qt=100", third.getEncodedBody());
+        assertEquals(2, third.getSpoolPosition());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getUsedBytes());
+    }
+
+    @Test
+    public void testBoundsAndWrapAround() throws Exception {
+        OffHeapHitQueue queue = new OffHeapHitQueue(URL, 0, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(hit(i)));
+        }
+        assertFalse(queue.offer(hit(3)));
+
+        // Each hit takes most of the buffer, so every other one starts over at the beginning
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 5000) {
+            value.append('x');
+        }
+
+        queue = new OffHeapHitQueue(URL, 0, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(hit(i).addBodyParam("el", value.toString())));
+            assertFalse(queue.offer(hit(-1).addBodyParam("el", value.toString())));
+
+            HttpRequest httpReq = queue.poll();
+            assertEquals("hit-" + i, httpReq.getBodyParams().get("ea"));
+            assertEquals(value.toString(), httpReq.getBodyParams().get("el"));
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testBatchesFromOffHeapLanes() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(5).setMaxBatchDelayMillis(10).setOffHeapLaneBytes(64 * 1024)).build();
+
+        for (int i = 0; i < 10; i++) {
+            ga.event().eventAction("hit-" + i).send();
+        }
+        assertEquals(200, ga.event().eventAction("tracked").sendCompletable().get().getStatusCode());
+        ga.close();
+
+        List<String> actions = client.getBatches().stream().flatMap(b -> b.getRequests().stream()).map(r -> r.getBodyParams().get("ea"))
+                .collect(Collectors.toList());
+        assertEquals(11, actions.size());
+        assertEquals("hit-0", actions.get(0));
+        assertEquals("tracked", actions.get(10));
+    }
+}
@@ -0,0 +1,216 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+import com.brsanthu.googleanalytics.internal.BoundedExecutorService;
+import com.brsanthu.googleanalytics.internal.GoogleAnalyticsThreadFactory;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+
+public class OverloadPolicyTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private GoogleAnalytics ga;
+
+    // Blocks the executor threads until released, so the executor can be saturated
+    private final CapturingHttpClient client = new CapturingHttpClient() {
+        @Override
+        public HttpResponse post(HttpRequest req) {
+            if (Thread.currentThread().getName().startsWith("googleanalyticsjava-thread")) {
+                try {
+                    blocked.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            return super.post(req);
+        }
+    };
+
+    @After
+    public void teardown() throws Exception {
+        release.countDown();
+        ga.close();
+    }
+
+    private Future<GoogleAnalyticsResponse>[] saturate(OverloadPolicy policy) throws Exception {
+        ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setMaxThreads(1).setThreadQueueSize(1).setOverloadPolicy(policy)
+                        .setOverloadBlockTimeoutMillis(50).setOverloadShedThreshold(0))
+                .build();
+
+        @SuppressWarnings("unchecked")
+        Future<GoogleAnalyticsResponse>[] futures = new Future[3];
+        futures[0] = ga.pageView().sendAsync();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        futures[1] = ga.pageView().sendAsync();
+        futures[2] = ga.pageView().sendAsync();
+        return futures;
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.DROP_NEWEST);
+        assertTrue(futures[2].isCancelled());
+        assertFalse(futures[1].isCancelled());
+        assertEquals(1, ga.getStats().getOverloadDroppedNewestHits());
+        assertEquals(1, ga.getStats().getDroppedHits());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.DROP_OLDEST);
+        assertTrue(futures[1].isCancelled());
+        assertFalse(futures[2].isCancelled());
+        assertEquals(1, ga.getStats().getOverloadDroppedOldestHits());
+
+        release.countDown();
+        futures[2].get();
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.BLOCK);
+        assertTrue(futures[2].isCancelled());
+        assertEquals(1, ga.getStats().getOverloadBlockTimeoutHits());
+    }
+
+    @Test
+    public void testProbabilistic() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.PROBABILISTIC);
+        assertTrue(futures[2].isCancelled());
+        assertEquals(1, ga.getStats().getOverloadShedHits());
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.CALLER_RUNS);
+        assertTrue(futures[2].isDone());
+        assertFalse(futures[2].isCancelled());
+        assertEquals(1, ga.getStats().getOverloadCallerRunsHits());
+        assertEquals(0, ga.getStats().getDroppedHits());
+    }
+
+    @Test
+    public void testHighPriorityNotShed() throws Exception {
+        Future<GoogleAnalyticsResponse>[] futures = saturate(OverloadPolicy.DROP_OLDEST);
+        Future<GoogleAnalyticsResponse> transaction = ga.transaction().sendAsync();
+
+        // Executor is full, so transaction is posted right away in this thread
+        assertTrue(transaction.isDone());
+        assertFalse(transaction.isCancelled());
+        assertEquals(1, ga.getStats().getOverloadCallerRunsHits());
+        assertEquals(1, ga.getStats().getOverloadDroppedOldestHits());
+        assertTrue(futures[1].isCancelled());
+    }
+
+    @Test
+    public void testBoundedExecutor() throws Exception {
+        BoundedExecutorService executor = new BoundedExecutorService(
+                Executors.newCachedThreadPool(new GoogleAnalyticsThreadFactory("googleanalyticsjava-thread-{0}")), 2, 1);
+        ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client).withExecutor(executor)
+                .withConfig(new GoogleAnalyticsConfig().setOverloadPolicy(OverloadPolicy.BLOCK).setOverloadBlockTimeoutMillis(50)).build();
+
+        Future<GoogleAnalyticsResponse> first = ga.pageView().sendAsync();
+        Future<GoogleAnalyticsResponse> second = ga.pageView().sendAsync();
+        Future<GoogleAnalyticsResponse> queued = ga.pageView().sendAsync();
+        Future<GoogleAnalyticsResponse> fourth = ga.pageView().sendAsync();
+
+        // Third waits in the queue rather than being posted in this thread
+        assertEquals(2, executor.getActiveCount());
+        assertEquals(1, executor.getQueue().size());
+        assertTrue(fourth.isCancelled());
+        assertEquals(1, ga.getStats().getOverloadBlockTimeoutHits());
+        assertEquals(0, ga.getStats().getOverloadCallerRunsHits());
+
+        release.countDown();
+        first.get();
+        second.get();
+        queued.get();
+        assertFalse(queued.isCancelled());
+    }
+
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testBufferedBytesOfExecutorQueue() throws Exception {
+        ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setMaxThreads(1).setThreadQueueSize(10).setOverloadPolicy(OverloadPolicy.DROP_NEWEST)
+                        .setMaxBufferedBytes(4000))
+                .build();
+
+        Future<GoogleAnalyticsResponse> first = ga.pageView().sendAsync();
+        Future<GoogleAnalyticsResponse> second = ga.pageView().sendAsync();
+        // Fits in the executor queue, but not in the budget
+        Future<GoogleAnalyticsResponse> large = ga.pageView().documentTitle(text(5000)).sendAsync();
+        Future<GoogleAnalyticsResponse> third = ga.pageView().sendAsync();
+
+        assertTrue(large.isCancelled());
+        assertFalse(third.isCancelled());
+        assertEquals(1, ga.getStats().getOverloadDroppedNewestHits());
+        assertTrue(ga.getStats().getBufferedBytes() > 0);
+        assertTrue(ga.getStats().getBufferedBytes() <= 4000);
+
+        release.countDown();
+        first.get();
+        second.get();
+        third.get();
+        assertEquals(0, ga.getStats().getBufferedBytes());
+    }
+
+    private void sendBatched(OverloadPolicy policy, int hits) {
+        ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(20).setMaxBatchDelayMillis(0)
+                        .setOverloadPolicy(policy).setMaxBufferedBytes(6000))
+                .build();
+
+        // Each hit is over 1000 bytes, so only five of them fit in the budget
+        for (int i = 0; i < hits; i++) {
+            ga.event().eventAction("hit-" + i).eventLabel(text(1000)).send();
+            assertTrue(ga.getStats().getBufferedBytes() <= 6000);
+        }
+    }
+
+    @Test
+    public void testBufferedBytesDropOldest() throws Exception {
+        sendBatched(OverloadPolicy.DROP_OLDEST, 8);
+        assertEquals(3, ga.getStats().getOverloadDroppedOldestHits());
+
+        ga.flush();
+        assertEquals(0, ga.getStats().getBufferedBytes());
+        assertEquals(5, client.getBatchedHits());
+        assertEquals("hit-3", client.getBatches().get(0).getRequests().get(0).getBodyParams().get("ea"));
+    }
+
+    @Test
+    public void testBufferedBytesCallerRuns() throws Exception {
+        sendBatched(OverloadPolicy.CALLER_RUNS, 8);
+        assertEquals(3, ga.getStats().getOverloadCallerRunsHits());
+        assertEquals(3, client.getRequests().size());
+        assertEquals("hit-5", client.getRequests().get(0).getBodyParams().get("ea"));
+
+        ga.flush();
+        assertEquals(5, client.getBatchedHits());
+        assertEquals(0, ga.getStats().getDroppedHits());
+    }
+}
@@ -0,0 +1,73 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.internal.QuotaGovernor;
+
+public class QuotaGovernorTest {
+
+    @Test
+    public void testPropertyQuota() throws Exception {
+        QuotaGovernor governor = new QuotaGovernor(16, 10, 5, 0, 0);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(governor.tryAcquire("UA-1-1", "client-" + i, now));
+        }
+        assertFalse(governor.tryAcquire("UA-1-1", "client-5", now));
+
+        // Other properties have their own quota
+        assertTrue(governor.tryAcquire("UA-2-2", "client-5", now));
+
+        // Refills at 10 hits per second
+        assertTrue(governor.tryAcquire("UA-1-1", "client-5", now + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(governor.tryAcquire("UA-1-1", "client-5", now + TimeUnit.MILLISECONDS.toNanos(100)));
+
+        // But never above the burst
+        long later = now + TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(governor.tryAcquire("UA-1-1", "client-" + i, later));
+        }
+        assertFalse(governor.tryAcquire("UA-1-1", "client-5", later));
+    }
+
+    @Test
+    public void testClientQuota() throws Exception {
+        QuotaGovernor governor = new QuotaGovernor(1024, 1, 3, 1, 2);
+        long now = System.nanoTime();
+
+        assertTrue(governor.tryAcquire("UA-1-1", "client-1", now));
+        assertTrue(governor.tryAcquire("UA-1-1", "client-1", now));
+        assertFalse(governor.tryAcquire("UA-1-1", "client-1", now));
+
+        // Rejected by the property quota, so client is not charged
+        assertTrue(governor.tryAcquire("UA-1-1", "client-2", now));
+        assertFalse(governor.tryAcquire("UA-1-1", "client-2", now));
+        assertTrue(governor.tryAcquire("UA-2-2", "client-2", now));
+    }
+
+    @Test
+    public void testOverQuotaHitsDropped() throws Exception {
+        CapturingHttpClient client = new CapturingHttpClient();
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setClientHitsPerSecond(0.001).setClientHitBurst(3)).build();
+
+        for (int i = 0; i < 5; i++) {
+            ga.pageView().clientId("client-1").send();
+            ga.pageView().clientId("client-2").send();
+        }
+        assertTrue(ga.pageView().clientId("client-1").sendCompletable().isCompletedExceptionally());
+        ga.flush();
+
+        assertEquals(6, client.getBatches().stream().mapToInt(b -> b.getRequests().size()).sum());
+        assertEquals(5, ga.getStats().getOverQuotaHits());
+        ga.close();
+    }
+}
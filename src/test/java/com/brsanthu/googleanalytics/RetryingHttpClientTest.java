@@ -0,0 +1,94 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+public class RetryingHttpClientTest {
+
+    /**
+     * Fails the given number of requests with the given status, then accepts them.
+     */
+    private static class FlakyHttpClient extends CapturingHttpClient {
+        private final AtomicInteger failures;
+        private final int failureStatus;
+
+        FlakyHttpClient(int failures, int failureStatus) {
+            this.failures = new AtomicInteger(failures);
+            this.failureStatus = failureStatus;
+        }
+
+        @Override
+        public synchronized HttpResponse post(HttpRequest req) {
+            super.post(req);
+            if (failures.getAndDecrement() > 0) {
+                return new HttpResponse().setStatusCode(failureStatus);
+            }
+            return new HttpResponse().setStatusCode(200);
+        }
+    }
+
+    private static GoogleAnalytics build(CapturingHttpClient client, GoogleAnalyticsConfig config) {
+        return GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(config.setRetryInitialBackoffMillis(1).setRetryMaxBackoffMillis(5)).build();
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception {
+        FlakyHttpClient client = new FlakyHttpClient(2, 503);
+        GoogleAnalytics ga = build(client, new GoogleAnalyticsConfig().setMaxRetries(3));
+
+        assertEquals(200, ga.pageView().send().getStatusCode());
+        assertEquals(3, client.getRequests().size());
+        assertEquals(2, ga.getStats().getRetryAttempts());
+        assertEquals(1, ga.getStats().getRetrySuccesses());
+        assertEquals(0, ga.getStats().getRetryGiveUps());
+        ga.close();
+    }
+
+    @Test
+    public void testDoesNotRetryClientErrors() throws Exception {
+        FlakyHttpClient client = new FlakyHttpClient(1, 400);
+        GoogleAnalytics ga = build(client, new GoogleAnalyticsConfig().setMaxRetries(3));
+
+        assertEquals(400, ga.pageView().send().getStatusCode());
+        assertEquals(1, client.getRequests().size());
+        assertEquals(0, ga.getStats().getRetryAttempts());
+        ga.close();
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        FlakyHttpClient client = new FlakyHttpClient(Integer.MAX_VALUE, 0);
+        GoogleAnalytics ga = build(client, new GoogleAnalyticsConfig().setMaxRetries(5).setRetryBudgetMax(4).setRetryBudgetRatio(0.1));
+
+        for (int i = 0; i < 20; i++) {
+            ga.pageView().send();
+        }
+
+        // Starts with 4 retries and earns 0.1 for each request, so an outage only adds a fraction of the requests
+        long retries = ga.getStats().getRetryAttempts();
+        assertTrue("retries " + retries, retries >= 4 && retries <= 6);
+        assertEquals(20 + retries, client.getRequests().size());
+        assertEquals(20, ga.getStats().getRetryGiveUps());
+        ga.close();
+    }
+
+    @Test
+    public void testRetryUpdatesQueueTime() throws Exception {
+        FlakyHttpClient client = new FlakyHttpClient(1, 500);
+        GoogleAnalytics ga = build(client, new GoogleAnalyticsConfig().setMaxRetries(1).setRetryInitialBackoffMillis(20));
+
+        ga.pageView().queueTime(100).send();
+        assertTrue(Long.parseLong(client.getRequests().get(0).getBodyParams().get("qt")) >= 100);
+        assertTrue(client.getRequests().get(0).getEncodedBody().endsWith("&qt=" + client.getRequests().get(0).getBodyParams().get("qt")));
+        ga.close();
+    }
+}
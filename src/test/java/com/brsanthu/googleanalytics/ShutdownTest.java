@@ -0,0 +1,101 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpBatchRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpBatchResponse;
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+
+public class ShutdownTest {
+
+    // Takes a while for each post, so the hits pile up
+    private final CapturingHttpClient client = new CapturingHttpClient() {
+        @Override
+        public HttpResponse post(HttpRequest req) {
+            pause();
+            return super.post(req);
+        }
+
+        @Override
+        public HttpBatchResponse postBatch(HttpBatchRequest req) {
+            pause();
+            return super.postBatch(req);
+        }
+
+        private void pause() {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Test
+    public void testCloseDrainsExecutor() throws Exception {
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setMaxThreads(5)).build();
+
+        IntStream.range(0, 20).forEach(i -> ga.pageView().sendAsync());
+        ShutdownReport report = ga.close(Duration.ofSeconds(5));
+
+        assertTrue(report.isComplete());
+        assertEquals(20, report.getDrainedHits());
+        assertEquals(20, client.getRequests().size());
+    }
+
+    @Test
+    public void testFailedHitsAreNotDrained() throws Exception {
+        CapturingHttpClient failing = new CapturingHttpClient() {
+            @Override
+            public HttpBatchResponse postBatch(HttpBatchRequest req) {
+                super.postBatch(req);
+                return new HttpBatchResponse().setStatusCode(503);
+            }
+        };
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(failing)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(10)).build();
+
+        IntStream.range(0, 5).forEach(i -> ga.pageView().send());
+        ShutdownReport report = ga.close(Duration.ofSeconds(5));
+
+        assertFalse(report.isComplete());
+        assertEquals(0, report.getDrainedHits());
+        assertEquals(5, report.getFailedHits());
+        assertEquals(5, failing.getBatchedHits());
+    }
+
+    @Test
+    public void testCloseDeadline() throws Exception {
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true).setBatchSize(10).setBatchQueueSize(1000)).build();
+
+        IntStream.range(0, 200).forEach(i -> ga.pageView().send());
+        ShutdownReport report = ga.close(Duration.ofMillis(350));
+
+        assertFalse(report.isComplete());
+        assertTrue(report.getDroppedHits() > 0);
+        assertEquals(200, report.getDrainedHits() + report.getDroppedHits() + report.getAbandonedHits());
+    }
+
+    @Test
+    public void testRejectsAfterClose() throws Exception {
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setBatchingEnabled(true)).build();
+        ga.close();
+
+        ga.pageView().send();
+        assertTrue(ga.pageView().sendCompletable().isCompletedExceptionally());
+        assertEquals(2, ga.getStats().getDroppedHits());
+        assertEquals(0, client.getBatchedHits());
+    }
+}
@@ -0,0 +1,85 @@
+package com.brsanthu.googleanalytics;
+
+import static com.brsanthu.googleanalytics.internal.Constants.TEST_TRACKING_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.brsanthu.googleanalytics.httpclient.HttpRequest;
+import com.brsanthu.googleanalytics.httpclient.HttpResponse;
+import com.brsanthu.googleanalytics.internal.VirtualThreads;
+import com.brsanthu.googleanalytics.request.GoogleAnalyticsResponse;
+
+public class VirtualThreadsTest {
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        // Test sources are compiled for Java 8
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    public void testBoundsConcurrency() throws Exception {
+        assumeTrue(javaVersion() >= 21);
+        assertTrue(VirtualThreads.isSupported());
+
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicBoolean allVirtual = new AtomicBoolean(true);
+        CountDownLatch started = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHttpClient client = new CapturingHttpClient() {
+            @Override
+            public HttpResponse post(HttpRequest req) {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    if (!isVirtual(Thread.currentThread())) {
+                        allVirtual.set(false);
+                    }
+                    started.countDown();
+                    release.await();
+                } catch (Exception e) {
+                    // ignore
+                }
+                concurrent.decrementAndGet();
+                return super.post(req);
+            }
+        };
+
+        GoogleAnalytics ga = GoogleAnalytics.builder().withTrackingId(TEST_TRACKING_ID).withHttpClient(client)
+                .withConfig(new GoogleAnalyticsConfig().setVirtualThreadsEnabled(true).setMaxVirtualThreads(4).setThreadQueueSize(100))
+                .build();
+
+        List<Future<GoogleAnalyticsResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(ga.pageView().sendAsync());
+        }
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(4, concurrent.get());
+
+        release.countDown();
+        for (Future<GoogleAnalyticsResponse> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        ga.close();
+
+        assertEquals(20, client.getRequests().size());
+        assertEquals(4, maxConcurrent.get());
+        assertTrue(allVirtual.get());
+    }
+}